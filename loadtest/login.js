@@ -0,0 +1,78 @@
+import http from 'k6/http';
+import { check } from 'k6';
+
+// Login burst against a running instance: the arrival rate ramps up to MAX_RATE logins/s,
+// so the highest stage completed within the thresholds is the max sustainable rate.
+// Run it once per threading mode (SPRING_THREADS_VIRTUAL_ENABLED=false|true) and compare the summaries.
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8081';
+const USERS = parseInt(__ENV.USERS || '500');
+const MAX_RATE = parseInt(__ENV.MAX_RATE || '2000');
+const STAGE_SECONDS = parseInt(__ENV.STAGE_SECONDS || '30');
+const MODE = __ENV.MODE || 'platform';
+const START_RATE = MAX_RATE / 10;
+const STAGES = [0.25, 0.5, 0.75, 1].map(ratio => MAX_RATE * ratio);
+
+export const options = {
+    scenarios: {
+        login: {
+            executor: 'ramping-arrival-rate',
+            startRate: START_RATE,
+            timeUnit: '1s',
+            preAllocatedVUs: 200,
+            maxVUs: 2000,
+            stages: STAGES.map(target => ({ target, duration: `${STAGE_SECONDS}s` })),
+        },
+    },
+    thresholds: {
+        http_req_failed: [{ threshold: 'rate<0.01', abortOnFail: true }],
+        http_req_duration: [{ threshold: 'p(99)<500', abortOnFail: true, delayAbortEval: '10s' }],
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+export function setup() {
+    const ids = [];
+    const run = Date.now().toString(36);
+    for (let i = 0; i < USERS; i++) {
+        const response = http.post(`${BASE_URL}/v1/saveUser`,
+            JSON.stringify({ name: `loadtest-${run}-${i}`, avatar: 'avatar', preferredCategories: [] }),
+            { headers: { 'Content-Type': 'application/json' } });
+        check(response, { 'user created': r => r.status === 200 || r.status === 201 });
+        ids.push(response.json('id'));
+    }
+    return { ids };
+}
+
+export default function (data) {
+    const id = data.ids[Math.floor(Math.random() * data.ids.length)];
+    const response = http.post(`${BASE_URL}/v1/loginById`, JSON.stringify({ id }),
+        { headers: { 'Content-Type': 'application/json' }, tags: { name: 'loginById' } });
+    check(response, { 'logged in': r => r.status === 200 });
+}
+
+// Arrival rate reached when the run ended: the whole ramp if no threshold aborted it.
+function reachedRate(elapsedSeconds) {
+    let from = START_RATE;
+    for (const target of STAGES) {
+        if (elapsedSeconds <= STAGE_SECONDS)
+            return from + (target - from) * elapsedSeconds / STAGE_SECONDS;
+        elapsedSeconds -= STAGE_SECONDS;
+        from = target;
+    }
+    return from;
+}
+
+export function handleSummary(data) {
+    const duration = data.metrics.http_req_duration.values;
+    const result = {
+        mode: MODE,
+        logins: data.metrics.iterations.values.count,
+        maxSustainedLoginsPerSecond: Math.round(reachedRate(data.state.testRunDurationMs / 1000)),
+        p99: duration['p(99)'],
+        failed: data.metrics.http_req_failed.values.rate,
+    };
+    return {
+        stdout: JSON.stringify(result, null, 2) + '\n',
+        [`loadtest/results-${MODE}.json`]: JSON.stringify(data, null, 2),
+    };
+}
@@ -0,0 +1,95 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.AuthorizationApplication;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.Category;
+import it.magiavventure.mongo.repository.UserRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+final class BenchmarkSupport {
+    static final EUser USER = EUser
+            .builder()
+            .id(UUID.fromString("6a0c3b8e-2f7d-4c1e-9a55-0d5b2f6e8c41"))
+            .name("benchmark user")
+            .avatar("avatar")
+            .preferredCategories(List.of(
+                    category("fantasy"),
+                    category("adventure"),
+                    category("horror")))
+            .authorities(List.of("user"))
+            .createdDate(LocalDateTime.now())
+            .lastModifiedDate(LocalDateTime.now())
+            .version(3L)
+            .build();
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Starts the application without web server, with a stubbed user repository and without caches,
+     * so that benchmarks run the real beans (e.g. the JwtService) without Mongo or Redis.
+     */
+    static ConfigurableApplicationContext startContext() {
+        return new SpringApplicationBuilder(AuthorizationApplication.class, StubConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "spring.data.mongodb.uri=mongodb://localhost:27017/benchmark?serverSelectionTimeoutMS=100",
+                        "magiavventure.lib.jwt.secret=" + "benchmark-secret-".repeat(8),
+                        "magiavventure.authorization.cache.local.enabled=false",
+                        "magiavventure.authorization.name-filter.enabled=false",
+                        "logging.level.it.magiavventure=warn")
+                .run();
+    }
+
+    static UserRepository userRepository(EUser user) {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.of(user);
+                    case "findAllById" -> List.of(user);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "StubUserRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Category category(String name) {
+        return Category
+                .builder()
+                .id(UUID.nameUUIDFromBytes(name.getBytes()))
+                .name(name)
+                .background("background")
+                .build();
+    }
+
+    @Configuration
+    static class StubConfiguration {
+
+        @Bean
+        @Primary
+        UserRepository stubUserRepository() {
+            return userRepository(USER);
+        }
+
+        @Bean
+        @Primary
+        CacheManager noOpCacheManager() {
+            return new NoOpCacheManager();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.cache.CachedValue;
+import it.magiavventure.authorization.cache.CompactCacheSerializer;
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.mongo.model.User;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheSerializationBenchmark {
+
+    @Param({"jdk", "compact"})
+    private String codec;
+    private RedisSerializer<Object> serializer;
+    private CachedValue user;
+    private CachedValue users;
+    private byte[] serializedUser;
+    private byte[] serializedUsers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ClassLoader classLoader = CacheSerializationBenchmark.class.getClassLoader();
+        serializer = "compact".equals(codec)
+                ? new CompactCacheSerializer(classLoader)
+                : new JdkSerializationRedisSerializer(classLoader);
+        UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+        List<User> userList = IntStream.range(0, 100)
+                .mapToObj(i -> userMapper.map(BenchmarkSupport.USER))
+                .toList();
+        user = new CachedValue(BenchmarkSupport.USER, System.currentTimeMillis());
+        users = new CachedValue(userList, System.currentTimeMillis());
+        serializedUser = serializer.serialize(user);
+        serializedUsers = serializer.serialize(users);
+    }
+
+    @Benchmark
+    public byte[] serializeUser(EncodedSize encodedSize) {
+        byte[] bytes = serializer.serialize(user);
+        encodedSize.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserializeUser() {
+        return serializer.deserialize(serializedUser);
+    }
+
+    @Benchmark
+    public byte[] serializeUsers(EncodedSize encodedSize) {
+        byte[] bytes = serializer.serialize(users);
+        encodedSize.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserializeUsers() {
+        return serializer.deserialize(serializedUsers);
+    }
+
+    /**
+     * Size of the encoded value, reported next to the timings of the serialize benchmarks.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EncodedSize {
+        public long bytes;
+    }
+}
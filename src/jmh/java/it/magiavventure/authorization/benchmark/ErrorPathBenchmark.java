@@ -0,0 +1,51 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.common.error.MagiavventureException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the library exceptions with the stackless ones on the failing login and on the taken name checks,
+ * thrown below a call depth close to the one of a request going through the web and proxy layers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ErrorPathBenchmark {
+
+    @Param({"library", "stackless"})
+    private String factory;
+    @Param({"32", "128"})
+    private int depth;
+
+    @Benchmark
+    public String failingLogin() {
+        return failAt(depth, AuthorizationException.USER_BLOCKED);
+    }
+
+    @Benchmark
+    public String nameTaken() {
+        return failAt(depth, AuthorizationException.USER_EXISTS, BenchmarkSupport.USER.getName());
+    }
+
+    private String failAt(int frames, String key, Object... args) {
+        try {
+            call(frames, key, args);
+            return null;
+        } catch (MagiavventureException e) {
+            return e.getError().getKey();
+        }
+    }
+
+    private void call(int frames, String key, Object[] args) {
+        if (frames > 0) {
+            call(frames - 1, key, args);
+            return;
+        }
+        throw "library".equals(factory)
+                ? MagiavventureException.of(key, args)
+                : AuthorizationException.expected(key, args);
+    }
+}
@@ -0,0 +1,50 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.authorization.model.Introspection;
+import it.magiavventure.authorization.service.IntrospectionService;
+import it.magiavventure.jwt.service.JwtService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Introspection of tokens of the benchmark user, the sample time mode reports the percentiles (e.g. p99).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IntrospectionBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private IntrospectionService introspectionService;
+    private String token;
+    private List<String> tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.startContext();
+        introspectionService = context.getBean(IntrospectionService.class);
+        token = context.getBean(JwtService.class)
+                .buildJwt(context.getBean(UserMapper.class).map(BenchmarkSupport.USER));
+        tokens = Collections.nCopies(100, token);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Introspection introspect() {
+        return introspectionService.introspect(token);
+    }
+
+    @Benchmark
+    public List<Introspection> introspectBatch() {
+        return introspectionService.introspectAll(tokens);
+    }
+}
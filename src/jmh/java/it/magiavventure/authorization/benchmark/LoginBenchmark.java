@@ -0,0 +1,33 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.model.LoginResponse;
+import it.magiavventure.authorization.service.AuthorizationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoginBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private AuthorizationService authorizationService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.startContext();
+        authorizationService = context.getBean(AuthorizationService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public LoginResponse loginById() {
+        return authorizationService.loginById(BenchmarkSupport.USER.getId());
+    }
+}
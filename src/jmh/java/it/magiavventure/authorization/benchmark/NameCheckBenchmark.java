@@ -0,0 +1,49 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.cache.BloomFilter;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.mongo.entity.EUser;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NameCheckBenchmark {
+
+    @Param({"Benchmark User", "a-name-nobody-took"})
+    private String name;
+    private BloomFilter bloomFilter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bloomFilter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++)
+            bloomFilter.put("user " + i);
+        bloomFilter.put("benchmark user");
+    }
+
+    @Benchmark
+    public Example<EUser> exampleProbe() {
+        return Example.of(EUser
+                .builder()
+                .name(name)
+                .build(), ExampleMatcher.matchingAny().withMatcher("name",
+                ExampleMatcher.GenericPropertyMatchers.ignoreCase()));
+    }
+
+    @Benchmark
+    public Query collationQuery() {
+        return UserQueryRepository.nameQuery(name);
+    }
+
+    @Benchmark
+    public boolean nameFilterLookup() {
+        return bloomFilter.mightContain(name.toLowerCase(Locale.ROOT));
+    }
+}
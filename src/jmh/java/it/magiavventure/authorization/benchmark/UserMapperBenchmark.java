@@ -0,0 +1,21 @@
+package it.magiavventure.authorization.benchmark;
+
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.mongo.model.User;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserMapperBenchmark {
+
+    private final UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+
+    @Benchmark
+    public User map() {
+        return userMapper.map(BenchmarkSupport.USER);
+    }
+}
@@ -0,0 +1,10 @@
+package it.magiavventure.authorization.cache;
+
+import lombok.Value;
+
+import java.util.UUID;
+
+@Value
+public class BanExpiredEvent {
+    UUID id;
+}
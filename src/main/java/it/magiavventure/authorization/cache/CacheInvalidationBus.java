@@ -0,0 +1,72 @@
+package it.magiavventure.authorization.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+@Slf4j
+@RequiredArgsConstructor
+public class CacheInvalidationBus implements MessageListener {
+    private static final String SEPARATOR = "|";
+    private static final String ALL_KEYS = "*";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, LayeredCache> caches = new ConcurrentHashMap<>();
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String channel;
+
+    public void register(LayeredCache cache) {
+        caches.put(cache.getName(), cache);
+    }
+
+    public void publish(String cacheName, String key) {
+        String message = String.join(SEPARATOR, nodeId, cacheName, Objects.requireNonNullElse(key, ALL_KEYS));
+        try {
+            stringRedisTemplate.convertAndSend(channel, message);
+        } catch (RuntimeException e) {
+            log.warn("Unable to publish cache invalidation '{}'", message, e);
+        }
+    }
+
+    /**
+     * Publishes the invalidation of many keys in a single pipeline.
+     */
+    public void publishAll(String cacheName, Collection<String> keys) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                keys.forEach(key -> connection.publish(channel.getBytes(StandardCharsets.UTF_8),
+                        String.join(SEPARATOR, nodeId, cacheName, key).getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to publish cache invalidation of '{}' keys of cache '{}'", keys.size(), cacheName, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8)
+                .split(Pattern.quote(SEPARATOR), 3);
+        if (parts.length != 3 || nodeId.equals(parts[0]))
+            return;
+        LayeredCache cache = caches.get(parts[1]);
+        if (Objects.isNull(cache))
+            return;
+        log.debug("Received local cache invalidation for cache '{}' and key '{}'", parts[1], parts[2]);
+        if (ALL_KEYS.equals(parts[2]))
+            cache.clearLocal();
+        else
+            cache.evictLocal(parts[2]);
+    }
+}
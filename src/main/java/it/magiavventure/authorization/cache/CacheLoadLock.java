@@ -0,0 +1,76 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Short lived Redis lock used to coalesce the loads of the same cache key across nodes.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CacheLoadLock {
+    static final String NOT_LOCKED = "";
+    private static final String PREFIX = "magiavventure:authorization:lock:";
+    private static final RedisScript<Long> UNLOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AuthorizationProperties.DistributedLock properties;
+
+    /**
+     * @return the lock token, null if the lock is held by another node or {@link #NOT_LOCKED}
+     * if Redis isn't available and the caller should load without lock
+     */
+    public String tryLock(String cacheName, String key) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean locked = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(lockKey(cacheName, key), token, properties.getTtl());
+            return Boolean.TRUE.equals(locked) ? token : null;
+        } catch (RuntimeException e) {
+            log.warn("Unable to acquire load lock for cache '{}' and key '{}'", cacheName, key, e);
+            return NOT_LOCKED;
+        }
+    }
+
+    public void unlock(String cacheName, String key, String token) {
+        if (Objects.isNull(token) || NOT_LOCKED.equals(token))
+            return;
+        try {
+            stringRedisTemplate.execute(UNLOCK, List.of(lockKey(cacheName, key)), token);
+        } catch (RuntimeException e) {
+            log.warn("Unable to release load lock for cache '{}' and key '{}'", cacheName, key, e);
+        }
+    }
+
+    public Cache.ValueWrapper awaitValue(Supplier<Cache.ValueWrapper> lookup) {
+        long deadline = System.nanoTime() + properties.getWaitTimeout().toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(properties.getPollInterval().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Cache.ValueWrapper wrapper = lookup.get();
+            if (Objects.nonNull(wrapper))
+                return wrapper;
+        }
+        return null;
+    }
+
+    private static String lockKey(String cacheName, String key) {
+        return PREFIX + cacheName + "::" + key;
+    }
+}
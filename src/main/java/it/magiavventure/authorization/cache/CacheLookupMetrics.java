@@ -0,0 +1,41 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Hit and miss counters of a {@link LayeredCache}, tagged only by cache name, result and the tier that answered.
+ */
+public class CacheLookupMetrics {
+    private static final String METRIC_NAME = "authorization.cache.lookups";
+
+    private final Counter localHits;
+    private final Counter remoteHits;
+    private final Counter misses;
+
+    public CacheLookupMetrics(String cacheName, MeterRegistry meterRegistry) {
+        this.localHits = counter(meterRegistry, cacheName, "hit", "local");
+        this.remoteHits = counter(meterRegistry, cacheName, "hit", "remote");
+        this.misses = counter(meterRegistry, cacheName, "miss", "remote");
+    }
+
+    public void localHit() {
+        localHits.increment();
+    }
+
+    public void remoteHit() {
+        remoteHits.increment();
+    }
+
+    public void miss() {
+        misses.increment();
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String cacheName, String result, String tier) {
+        return Counter.builder(METRIC_NAME)
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,72 @@
+package it.magiavventure.authorization.cache;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor of the refresh-ahead loads. It doesn't implement {@link java.util.concurrent.Executor}
+ * so that it isn't picked up as the application task executor.
+ * With virtual threads every load gets its own thread and the bound is the number of running and pending loads.
+ */
+public class CacheRefreshExecutor implements DisposableBean {
+    private static final String THREAD_NAME_PREFIX = "cache-refresh-";
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public CacheRefreshExecutor(int poolSize, int queueCapacity) {
+        this(poolSize, queueCapacity, false);
+    }
+
+    public CacheRefreshExecutor(int poolSize, int queueCapacity, boolean virtualThreads) {
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(THREAD_NAME_PREFIX, 1).factory());
+            this.permits = new Semaphore(poolSize + queueCapacity);
+            return;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.executor = threadPoolExecutor;
+        this.permits = null;
+    }
+
+    public void execute(Runnable task) {
+        if (permits == null) {
+            executor.execute(task);
+            return;
+        }
+        if (!permits.tryAcquire())
+            throw new RejectedExecutionException("Too many cache refreshes");
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,68 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decides when a cache entry is close enough to its expiration to be reloaded in background
+ * and runs the reload on the bounded {@link CacheRefreshExecutor}.
+ */
+@Slf4j
+public class CacheRefresher {
+    private static final String METRIC_NAME = "authorization.cache.refresh";
+
+    private final String cacheName;
+    private final CacheRefreshExecutor executor;
+    private final long ttlMillis;
+    private final long refreshAfterMillis;
+    private final Counter successCounter;
+    private final Counter failureCounter;
+    private final Counter rejectedCounter;
+
+    public CacheRefresher(String cacheName, CacheRefreshExecutor executor, Duration ttl, Duration window,
+                          MeterRegistry meterRegistry) {
+        this.cacheName = cacheName;
+        this.executor = executor;
+        this.ttlMillis = ttl.toMillis();
+        this.refreshAfterMillis = Math.max(0, ttl.minus(window).toMillis());
+        this.successCounter = counter(meterRegistry, cacheName, "success");
+        this.failureCounter = counter(meterRegistry, cacheName, "failure");
+        this.rejectedCounter = counter(meterRegistry, cacheName, "rejected");
+    }
+
+    public boolean isDue(CachedValue cachedValue) {
+        if (cachedValue.getWrittenAt() == CachedValue.UNKNOWN_WRITE_TIME)
+            return false;
+        long age = System.currentTimeMillis() - cachedValue.getWrittenAt();
+        return age >= refreshAfterMillis && age < ttlMillis;
+    }
+
+    public boolean submit(Runnable refresh) {
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.run();
+                    successCounter.increment();
+                } catch (RuntimeException e) {
+                    failureCounter.increment();
+                    log.warn("Unable to refresh an entry of cache '{}'", cacheName, e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            return false;
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String cacheName, String result) {
+        return Counter.builder(METRIC_NAME)
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
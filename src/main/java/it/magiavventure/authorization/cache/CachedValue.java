@@ -0,0 +1,22 @@
+package it.magiavventure.authorization.cache;
+
+import lombok.Value;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+@Value
+public class CachedValue implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    public static final long UNKNOWN_WRITE_TIME = -1L;
+
+    Object value;
+    long writtenAt;
+
+    public static CachedValue of(Object stored) {
+        if (stored instanceof CachedValue cachedValue)
+            return cachedValue;
+        return new CachedValue(stored, UNKNOWN_WRITE_TIME);
+    }
+}
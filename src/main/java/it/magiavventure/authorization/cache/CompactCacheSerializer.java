@@ -0,0 +1,193 @@
+package it.magiavventure.authorization.cache;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import it.magiavventure.authorization.mapper.AuthorityMask;
+import it.magiavventure.authorization.model.UserPage;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact binary codec of the cached values: a small envelope (magic, version, type tag, write time)
+ * followed by the Smile encoding of the value, with UUIDs written as 16 raw bytes and repeated strings
+ * written as back references. Types without a tag are embedded with the JDK serialization, and entries
+ * written by the JDK serializer are still read, so the codec can be switched on a populated Redis.
+ * The authorities of the cached entities are optionally written as an {@link AuthorityMask}; both forms are
+ * always read, so the mask can be enabled once every node runs a version that reads it.
+ */
+@Slf4j
+public class CompactCacheSerializer implements RedisSerializer<Object> {
+    static final byte MAGIC = (byte) 0xC5;
+    static final byte VERSION = 1;
+    private static final byte JDK_STREAM_MAGIC = (byte) 0xAC;
+    private static final int HEADER_SIZE = 3 + Long.BYTES;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_JDK = 1;
+    private static final byte TYPE_E_USER = 2;
+    private static final byte TYPE_USER = 3;
+    private static final byte TYPE_USER_LIST = 4;
+    private static final byte TYPE_USER_PAGE = 5;
+
+    private final JdkSerializationRedisSerializer jdkSerializer;
+    private final ObjectReader eUserReader;
+    private final ObjectReader userReader;
+    private final ObjectReader userListReader;
+    private final ObjectReader userPageReader;
+    private final ObjectWriter writer;
+
+    public CompactCacheSerializer(ClassLoader classLoader) {
+        this(classLoader, false);
+    }
+
+    public CompactCacheSerializer(ClassLoader classLoader, boolean authorityMask) {
+        this.jdkSerializer = new JdkSerializationRedisSerializer(classLoader);
+        SmileMapper mapper = SmileMapper
+                .builder(SmileFactory
+                        .builder()
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                        .build())
+                .findAndAddModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .addMixIn(EUser.class, authorityMask ? MaskedAuthorities.class : NamedAuthorities.class)
+                .build();
+        this.eUserReader = mapper.readerFor(EUser.class);
+        this.userReader = mapper.readerFor(User.class);
+        this.userListReader = mapper.readerFor(new TypeReference<List<User>>() {});
+        this.userPageReader = mapper.readerFor(UserPage.class);
+        this.writer = mapper.writer();
+    }
+
+    @Override
+    public byte[] serialize(Object object) {
+        CachedValue cached = CachedValue.of(object);
+        Object value = cached.getValue();
+        byte type = typeOf(value);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+            output.write(ByteBuffer
+                    .allocate(HEADER_SIZE)
+                    .put(MAGIC)
+                    .put(VERSION)
+                    .put(type)
+                    .putLong(cached.getWrittenAt())
+                    .array());
+            if (type == TYPE_JDK)
+                output.write(jdkSerializer.serialize(value));
+            else if (type != TYPE_NULL)
+                writer.writeValue(output, value);
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize cache value", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (Objects.isNull(bytes) || bytes.length == 0)
+            return null;
+        if (bytes[0] == JDK_STREAM_MAGIC)
+            return jdkSerializer.deserialize(bytes);
+        if (bytes[0] != MAGIC || bytes.length < HEADER_SIZE)
+            throw new SerializationException("Unknown cache value format");
+        if (bytes[1] != VERSION) {
+            log.debug("Skipping cache value written with codec version {}", bytes[1]);
+            return null;
+        }
+        long writtenAt = ByteBuffer.wrap(bytes, 3, Long.BYTES).getLong();
+        return new CachedValue(readValue(bytes[2], bytes), writtenAt);
+    }
+
+    private Object readValue(byte type, byte[] bytes) {
+        int length = bytes.length - HEADER_SIZE;
+        try {
+            return switch (type) {
+                case TYPE_NULL -> null;
+                case TYPE_JDK -> jdkSerializer.deserialize(Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length));
+                case TYPE_E_USER -> eUserReader.readValue(bytes, HEADER_SIZE, length);
+                case TYPE_USER -> userReader.readValue(bytes, HEADER_SIZE, length);
+                case TYPE_USER_LIST -> userListReader.readValue(bytes, HEADER_SIZE, length);
+                case TYPE_USER_PAGE -> userPageReader.readValue(bytes, HEADER_SIZE, length);
+                default -> throw new SerializationException("Unknown cache value type " + type);
+            };
+        } catch (IOException e) {
+            throw new SerializationException("Cannot deserialize cache value", e);
+        }
+    }
+
+    private static byte typeOf(Object value) {
+        if (Objects.isNull(value))
+            return TYPE_NULL;
+        if (value instanceof EUser)
+            return TYPE_E_USER;
+        if (value instanceof User)
+            return TYPE_USER;
+        if (value instanceof UserPage)
+            return TYPE_USER_PAGE;
+        if (value instanceof List<?> list && list.stream().allMatch(User.class::isInstance))
+            return TYPE_USER_LIST;
+        return TYPE_JDK;
+    }
+
+    abstract static class NamedAuthorities {
+        @JsonDeserialize(using = AuthoritiesDeserializer.class)
+        List<String> authorities;
+    }
+
+    abstract static class MaskedAuthorities {
+        @JsonSerialize(using = AuthoritiesSerializer.class)
+        @JsonDeserialize(using = AuthoritiesDeserializer.class)
+        List<String> authorities;
+    }
+
+    static class AuthoritiesSerializer extends JsonSerializer<List<String>> {
+        @Override
+        public void serialize(List<String> authorities, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            int mask = AuthorityMask.of(authorities);
+            if (mask != AuthorityMask.UNENCODABLE) {
+                generator.writeNumber(mask);
+                return;
+            }
+            generator.writeStartArray();
+            for (String authority : authorities)
+                generator.writeString(authority);
+            generator.writeEndArray();
+        }
+    }
+
+    static class AuthoritiesDeserializer extends JsonDeserializer<List<String>> {
+        @Override
+        public List<String> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT)
+                return AuthorityMask.names(parser.getIntValue());
+            return context.readValue(parser, context.getTypeFactory().constructCollectionType(List.class,
+                    String.class));
+        }
+    }
+}
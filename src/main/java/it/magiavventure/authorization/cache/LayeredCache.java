@@ -0,0 +1,517 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.authorization.jfr.UserCacheLookupEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Cache with an optional bounded in-process layer (L1) in front of the shared remote cache (L2).
+ * Every write or eviction is propagated to the L1 of the other nodes through the {@link CacheInvalidationBus}.
+ * Concurrent misses on the same key are coalesced in a single load per node and, when a {@link CacheLoadLock}
+ * is given, across nodes.
+ * Both layers hold {@link CachedValue}s: when a {@link CacheRefresher} is given, an entry read close to its
+ * expiration is reloaded in background while the caller gets the current value, and a reload overtaken by an
+ * eviction of its key doesn't write the value it loaded.
+ * When a {@link RedisCacheBatch} is given, the multi key operations reach the remote layer in a single round trip.
+ */
+public class LayeredCache implements Cache {
+    private static final String LOCAL_TIER = "local";
+    private static final String REMOTE_TIER = "remote";
+    private static final String HIT = "hit";
+    private static final String MISS = "miss";
+
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final CacheInvalidationBus invalidationBus;
+    private final CacheLoadLock loadLock;
+    private final CacheRefresher refresher;
+    private final CacheLookupMetrics metrics;
+    private final RedisCacheBatch batch;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> refreshing = new ConcurrentHashMap<>();
+
+    public LayeredCache(Cache remote,
+                        com.github.benmanes.caffeine.cache.Cache<String, Object> local,
+                        CacheInvalidationBus invalidationBus,
+                        CacheLoadLock loadLock,
+                        CacheRefresher refresher,
+                        CacheLookupMetrics metrics,
+                        RedisCacheBatch batch) {
+        this.remote = remote;
+        this.local = local;
+        this.invalidationBus = invalidationBus;
+        this.loadLock = loadLock;
+        this.refresher = refresher;
+        this.metrics = metrics;
+        this.batch = batch;
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CachedValue cached = lookup(key);
+        return Objects.nonNull(cached) ? new SimpleValueWrapper(cached.getValue()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = Objects.nonNull(wrapper) ? wrapper.get() : null;
+        if (Objects.nonNull(value) && Objects.nonNull(type) && !type.isInstance(value))
+            throw new IllegalStateException("Cached value is not of required type [%s]: %s"
+                    .formatted(type.getName(), value));
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CachedValue cached = lookup(key);
+        if (Objects.nonNull(cached)) {
+            if (Objects.nonNull(refresher) && refresher.isDue(cached))
+                refresh(key, valueLoader);
+            return (T) cached.getValue();
+        }
+
+        String localKey = localKey(key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(localKey, flight);
+        if (Objects.nonNull(running))
+            return (T) await(running);
+        try {
+            Object value = load(key, localKey, valueLoader);
+            flight.complete(value);
+            return (T) value;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(localKey, flight);
+        }
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        if (hasLocal()) {
+            Object value = local.getIfPresent(localKey(key));
+            if (Objects.nonNull(value)) {
+                recordLocalHit();
+                return CompletableFuture.completedFuture(new SimpleValueWrapper(((CachedValue) value).getValue()));
+            }
+        }
+        CompletableFuture<?> retrieved = remote.retrieve(key);
+        if (Objects.isNull(retrieved))
+            return null;
+        return retrieved.thenApply(stored -> {
+            if (Objects.isNull(stored)) {
+                recordMiss();
+                return null;
+            }
+            recordRemoteHit();
+            boolean wrapped = stored instanceof ValueWrapper;
+            CachedValue cached = CachedValue.of(wrapped ? ((ValueWrapper) stored).get() : stored);
+            if (hasLocal())
+                local.put(localKey(key), cached);
+            return wrapped ? new SimpleValueWrapper(cached.getValue()) : cached.getValue();
+        });
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(Object, Callable)}: the remote layer is read and written
+     * asynchronously and concurrent misses on the same key share the same load.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        String localKey = localKey(key);
+        if (hasLocal()) {
+            Object value = local.getIfPresent(localKey);
+            if (Objects.nonNull(value)) {
+                recordLocalHit();
+                return CompletableFuture.completedFuture((T) ((CachedValue) value).getValue());
+            }
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(localKey, flight);
+        if (Objects.nonNull(running))
+            return (CompletableFuture<T>) running;
+        AtomicBoolean loaded = new AtomicBoolean();
+        try {
+            remote.retrieve(key, () -> {
+                        loaded.set(true);
+                        return valueLoader.get()
+                                .<Object>thenApply(value -> new CachedValue(value, System.currentTimeMillis()));
+                    })
+                    .whenComplete((stored, failure) -> {
+                        inFlight.remove(localKey, flight);
+                        if (loaded.get())
+                            recordMiss();
+                        else
+                            recordRemoteHit();
+                        if (Objects.nonNull(failure)) {
+                            flight.completeExceptionally(failure);
+                            return;
+                        }
+                        CachedValue cached = CachedValue.of(stored);
+                        if (hasLocal())
+                            local.put(localKey, cached);
+                        flight.complete(cached.getValue());
+                    });
+        } catch (RuntimeException e) {
+            inFlight.remove(localKey, flight);
+            flight.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) flight;
+    }
+
+    /**
+     * Values of the given keys, the keys missing in both layers are not in the returned map.
+     */
+    public Map<Object, Object> getAll(List<?> keys) {
+        Map<Object, Object> values = new HashMap<>();
+        List<Object> misses = new ArrayList<>();
+        for (Object key : keys) {
+            Object value = hasLocal() ? local.getIfPresent(localKey(key)) : null;
+            if (Objects.nonNull(value)) {
+                recordLocalHit();
+                values.put(key, ((CachedValue) value).getValue());
+            } else {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty())
+            return values;
+        List<Object> stored = remoteGetAll(misses);
+        for (int i = 0; i < misses.size(); i++) {
+            if (Objects.isNull(stored.get(i))) {
+                recordMiss();
+                continue;
+            }
+            recordRemoteHit();
+            CachedValue cached = CachedValue.of(stored.get(i));
+            if (hasLocal())
+                local.put(localKey(misses.get(i)), cached);
+            values.put(misses.get(i), cached.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Fills both layers with values loaded from the database, like a load on a miss the other nodes
+     * aren't notified.
+     */
+    public void putAll(Map<?, ?> values) {
+        if (values.isEmpty())
+            return;
+        long writtenAt = System.currentTimeMillis();
+        Map<Object, CachedValue> cached = new HashMap<>();
+        values.forEach((key, value) -> cached.put(key, new CachedValue(value, writtenAt)));
+        if (Objects.nonNull(batch) && remote instanceof RedisCache redisCache)
+            batch.put(redisCache, cached);
+        else
+            cached.forEach(remote::put);
+        if (hasLocal())
+            cached.forEach((key, value) -> local.put(localKey(key), value));
+    }
+
+    /**
+     * Replaces the value of the key with the result of the change, atomically on Redis so that concurrent
+     * writers aren't lost without any local lock. Without a batch the remote cache isn't shared, so the change is
+     * applied under the lock of this cache. A missing key is left untouched and a null result evicts it; the
+     * local copies are evicted on every node.
+     */
+    public void update(Object key, UnaryOperator<Object> change) {
+        markEvicted(localKey(key));
+        UnaryOperator<Object> cachedChange = stored -> {
+            Object value = change.apply(CachedValue.of(stored).getValue());
+            return Objects.nonNull(value) ? new CachedValue(value, System.currentTimeMillis()) : null;
+        };
+        if (Objects.nonNull(batch) && remote instanceof RedisCache redisCache) {
+            batch.update(redisCache, key, cachedChange);
+        } else {
+            synchronized (this) {
+                ValueWrapper wrapper = remote.get(key);
+                if (Objects.isNull(wrapper))
+                    return;
+                Object value = cachedChange.apply(wrapper.get());
+                if (Objects.nonNull(value))
+                    remote.put(key, value);
+                else
+                    remote.evict(key);
+            }
+        }
+        evictLocal(localKey(key));
+        publish(localKey(key));
+    }
+
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty())
+            return;
+        List<String> localKeys = keys.stream().map(LayeredCache::localKey).toList();
+        localKeys.forEach(this::markEvicted);
+        if (Objects.nonNull(batch) && remote instanceof RedisCache redisCache)
+            batch.evict(redisCache, keys);
+        else
+            keys.forEach(remote::evict);
+        if (!hasLocal())
+            return;
+        localKeys.forEach(this::evictLocal);
+        invalidationBus.publishAll(getName(), localKeys);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        markEvicted(localKey(key));
+        store(key, value);
+        publish(localKey(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        markEvicted(localKey(key));
+        remote.evict(key);
+        evictLocal(localKey(key));
+        publish(localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        markEvicted(localKey(key));
+        boolean present = remote.evictIfPresent(key);
+        evictLocal(localKey(key));
+        publish(localKey(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        markAllEvicted();
+        remote.clear();
+        clearLocal();
+        publish(null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        markAllEvicted();
+        boolean present = remote.invalidate();
+        clearLocal();
+        publish(null);
+        return present;
+    }
+
+    /**
+     * Evicts the local copy, also when the eviction comes from another node.
+     */
+    public void evictLocal(String key) {
+        markEvicted(key);
+        if (hasLocal())
+            local.invalidate(key);
+    }
+
+    public void clearLocal() {
+        markAllEvicted();
+        if (hasLocal())
+            local.invalidateAll();
+    }
+
+    public boolean hasLocal() {
+        return Objects.nonNull(local);
+    }
+
+    private CachedValue lookup(Object key) {
+        UserCacheLookupEvent event = new UserCacheLookupEvent();
+        event.begin();
+        if (hasLocal()) {
+            Object value = local.getIfPresent(localKey(key));
+            if (Objects.nonNull(value)) {
+                recordLocalHit();
+                event.end(getName(), LOCAL_TIER, HIT);
+                return (CachedValue) value;
+            }
+        }
+        ValueWrapper wrapper = remote.get(key);
+        if (Objects.isNull(wrapper)) {
+            recordMiss();
+            event.end(getName(), REMOTE_TIER, MISS);
+            return null;
+        }
+        recordRemoteHit();
+        event.end(getName(), REMOTE_TIER, HIT);
+        CachedValue cached = CachedValue.of(wrapper.get());
+        if (hasLocal())
+            local.put(localKey(key), cached);
+        return cached;
+    }
+
+    private List<Object> remoteGetAll(List<Object> keys) {
+        if (Objects.nonNull(batch) && remote instanceof RedisCache redisCache)
+            return batch.get(redisCache, keys);
+        List<Object> stored = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            ValueWrapper wrapper = remote.get(key);
+            stored.add(Objects.nonNull(wrapper) ? wrapper.get() : null);
+        }
+        return stored;
+    }
+
+    /**
+     * Reloads the entry on the refresher executor; concurrent reads of the same key share the same reload.
+     */
+    private void refresh(Object key, Callable<?> valueLoader) {
+        String localKey = localKey(key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        if (Objects.nonNull(inFlight.putIfAbsent(localKey, flight)))
+            return;
+        AtomicBoolean evicted = new AtomicBoolean();
+        refreshing.put(localKey, evicted);
+        boolean submitted = refresher.submit(() -> {
+            try {
+                flight.complete(reload(key, localKey, valueLoader, evicted));
+            } catch (RuntimeException e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                refreshing.remove(localKey, evicted);
+                inFlight.remove(localKey, flight);
+            }
+        });
+        if (!submitted) {
+            refreshing.remove(localKey, evicted);
+            inFlight.remove(localKey, flight);
+            flight.completeExceptionally(new ValueRetrievalException(key, valueLoader,
+                    new IllegalStateException("Refresh rejected")));
+        }
+    }
+
+    /**
+     * Fills both layers without notifying the other nodes: values loaded from the database on a miss
+     * can't be older than what the other nodes already hold.
+     */
+    private void store(Object key, Object value) {
+        CachedValue cached = new CachedValue(value, System.currentTimeMillis());
+        remote.put(key, cached);
+        if (hasLocal())
+            local.put(localKey(key), cached);
+    }
+
+    private Object load(Object key, String localKey, Callable<?> valueLoader) {
+        if (Objects.isNull(loadLock))
+            return loadAndStore(key, valueLoader);
+        String token = loadLock.tryLock(getName(), localKey);
+        if (Objects.isNull(token)) {
+            ValueWrapper loaded = loadLock.awaitValue(() -> remote.get(key));
+            if (Objects.nonNull(loaded)) {
+                CachedValue cached = CachedValue.of(loaded.get());
+                if (hasLocal())
+                    local.put(localKey, cached);
+                return cached.getValue();
+            }
+        }
+        try {
+            return loadAndStore(key, valueLoader);
+        } finally {
+            loadLock.unlock(getName(), localKey, token);
+        }
+    }
+
+    private Object loadAndStore(Object key, Callable<?> valueLoader) {
+        Object value = call(key, valueLoader);
+        store(key, value);
+        return value;
+    }
+
+    /**
+     * The value loaded before an eviction of the key may be the one the eviction removed, so it's only written
+     * when the key isn't evicted meanwhile, and removed again when the eviction lands while it's written.
+     */
+    private Object reload(Object key, String localKey, Callable<?> valueLoader, AtomicBoolean evicted) {
+        Object value = call(key, valueLoader);
+        if (evicted.get())
+            return value;
+        store(key, value);
+        if (evicted.get()) {
+            remote.evict(key);
+            if (hasLocal())
+                local.invalidate(localKey);
+        }
+        return value;
+    }
+
+    private static Object call(Object key, Callable<?> valueLoader) {
+        try {
+            return valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private void markEvicted(String localKey) {
+        AtomicBoolean evicted = refreshing.get(localKey);
+        if (Objects.nonNull(evicted))
+            evicted.set(true);
+    }
+
+    private void markAllEvicted() {
+        refreshing.values().forEach(evicted -> evicted.set(true));
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    private void recordLocalHit() {
+        if (Objects.nonNull(metrics))
+            metrics.localHit();
+    }
+
+    private void recordRemoteHit() {
+        if (Objects.nonNull(metrics))
+            metrics.remoteHit();
+    }
+
+    private void recordMiss() {
+        if (Objects.nonNull(metrics))
+            metrics.miss();
+    }
+
+    private void publish(String key) {
+        if (hasLocal())
+            invalidationBus.publish(getName(), key);
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
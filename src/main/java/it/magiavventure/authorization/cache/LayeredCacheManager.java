@@ -0,0 +1,57 @@
+package it.magiavventure.authorization.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+@RequiredArgsConstructor
+public class LayeredCacheManager implements CacheManager {
+
+    private final CacheManager remoteCacheManager;
+    private final Map<String, AuthorizationProperties.LocalCache> localCaches;
+    private final CacheInvalidationBus invalidationBus;
+    private final CacheLoadLock loadLock;
+    private final Map<String, CacheRefresher> refreshers;
+    private final MeterRegistry meterRegistry;
+    private final RedisCacheBatch batch;
+    private final Map<String, LayeredCache> caches = new ConcurrentHashMap<>();
+
+    @Override
+    public LayeredCache getCache(String name) {
+        LayeredCache cache = caches.get(name);
+        if (Objects.nonNull(cache))
+            return cache;
+        Cache remote = remoteCacheManager.getCache(name);
+        if (Objects.isNull(remote))
+            return null;
+        return caches.computeIfAbsent(name, cacheName -> createCache(remote));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    private LayeredCache createCache(Cache remote) {
+        AuthorizationProperties.LocalCache localCache = localCaches.get(remote.getName());
+        CacheRefresher refresher = refreshers.get(remote.getName());
+        CacheLookupMetrics metrics = new CacheLookupMetrics(remote.getName(), meterRegistry);
+        if (Objects.isNull(localCache))
+            return new LayeredCache(remote, null, invalidationBus, loadLock, refresher, metrics, batch);
+        LayeredCache cache = new LayeredCache(remote, Caffeine
+                .newBuilder()
+                .maximumSize(localCache.getMaximumSize())
+                .expireAfterWrite(localCache.getTtl())
+                .build(), invalidationBus, loadLock, refresher, metrics, batch);
+        invalidationBus.register(cache);
+        return cache;
+    }
+}
@@ -0,0 +1,128 @@
+package it.magiavventure.authorization.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * Multi key operations on a {@link RedisCache}, using the same key format, value format and time to live
+ * of the cache: one MGET for the reads, one DEL for the evictions and a single pipeline for the writes.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RedisCacheBatch {
+    private static final int UPDATE_ATTEMPTS = 3;
+
+    private final RedisConnectionFactory connectionFactory;
+
+    public List<Object> get(RedisCache cache, List<?> keys) {
+        List<byte[]> values;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            values = connection.stringCommands().mGet(cacheKeys(cache, keys));
+        }
+        List<Object> result = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = Objects.nonNull(values) ? values.get(i) : null;
+            result.add(Objects.nonNull(value)
+                    ? cache.getCacheConfiguration().getValueSerializationPair().read(ByteBuffer.wrap(value))
+                    : null);
+        }
+        return result;
+    }
+
+    public void put(RedisCache cache, Map<?, ?> values) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            try {
+                values.forEach((key, value) -> set(connection, configuration, cacheKey(cache, key), key, value));
+            } finally {
+                connection.closePipeline();
+            }
+        }
+    }
+
+    /**
+     * Compare and set of a single key with WATCH/MULTI/EXEC: when another writer changes the key meanwhile the
+     * change is applied again on its value, and after a few attempts the key is deleted. A missing key is left
+     * untouched and a null result of the change deletes it.
+     */
+    public void update(RedisCache cache, Object key, UnaryOperator<Object> change) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        byte[] cacheKey = cacheKey(cache, key);
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            for (int attempt = 0; attempt < UPDATE_ATTEMPTS; attempt++) {
+                connection.watch(cacheKey);
+                Object value;
+                try {
+                    byte[] stored = connection.stringCommands().get(cacheKey);
+                    if (Objects.isNull(stored)) {
+                        connection.unwatch();
+                        return;
+                    }
+                    value = change.apply(configuration.getValueSerializationPair().read(ByteBuffer.wrap(stored)));
+                } catch (RuntimeException e) {
+                    connection.unwatch();
+                    throw e;
+                }
+                connection.multi();
+                if (Objects.isNull(value))
+                    connection.keyCommands().del(cacheKey);
+                else
+                    set(connection, configuration, cacheKey, key, value);
+                List<Object> results = connection.exec();
+                if (Objects.nonNull(results) && !results.isEmpty())
+                    return;
+            }
+            log.debug("Key '{}' of cache '{}' kept changing during the update, deleting it", key, cache.getName());
+            connection.keyCommands().del(cacheKey);
+        }
+    }
+
+    public void evict(RedisCache cache, Collection<?> keys) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.keyCommands().del(cacheKeys(cache, keys));
+        }
+    }
+
+    private static void set(RedisConnection connection, RedisCacheConfiguration configuration, byte[] cacheKey,
+                            Object key, Object value) {
+        Duration ttl = configuration.getTtlFunction().getTimeToLive(key, value);
+        connection.stringCommands().set(cacheKey,
+                ByteUtils.getBytes(configuration.getValueSerializationPair().write(value)),
+                Objects.isNull(ttl) || ttl.isZero() || ttl.isNegative()
+                        ? Expiration.persistent()
+                        : Expiration.from(ttl),
+                RedisStringCommands.SetOption.upsert());
+    }
+
+    private static byte[][] cacheKeys(RedisCache cache, Collection<?> keys) {
+        return keys.stream()
+                .map(key -> cacheKey(cache, key))
+                .toArray(byte[][]::new);
+    }
+
+    private static byte[] cacheKey(RedisCache cache, Object key) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        String convertedKey = configuration.getConversionService().convert(key, String.class);
+        String cacheKey = configuration.usePrefix()
+                ? configuration.getKeyPrefixFor(cache.getName()) + convertedKey
+                : convertedKey;
+        return ByteUtils.getBytes(configuration.getKeySerializationPair().write(cacheKey));
+    }
+}
@@ -0,0 +1,229 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.mongo.entity.EUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Node local set of the banned user ids with their ban expiration, checked on every authenticated request
+ * so that a ban revokes the tokens already issued. Bans are replicated through Redis pub/sub and every node
+ * seeds the set with the active bans on startup, then reconciles it with them periodically to catch up with the
+ * bans written by other writers and the messages it missed. Expirations are tracked by a timing wheel that publishes a
+ * {@link BanExpiredEvent} for every ban reaching its end.
+ * <p>
+ * The last change of a user wins, so a shorter ban replaces a longer one. Every change carries the time it was
+ * made and older changes received late are discarded: lifted bans are kept as tombstones for a rotation of the
+ * wheel to reject the bans they replaced.
+ */
+@Slf4j
+@Component
+public class RevocationSet implements MessageListener {
+    private static final String SEPARATOR = "|";
+    private static final long LIFTED = 0L;
+
+    private final UserQueryRepository userQueryRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final AuthorizationProperties.Revocation properties;
+    private final Map<UUID, Revocation> revocations = new ConcurrentHashMap<>();
+    private final TimingWheel<UUID> expirations;
+    private final long tombstoneMillis;
+
+    public RevocationSet(UserQueryRepository userQueryRepository,
+                         StringRedisTemplate stringRedisTemplate,
+                         ApplicationEventPublisher applicationEventPublisher,
+                         AuthorizationProperties authorizationProperties,
+                         MeterRegistry meterRegistry) {
+        this.userQueryRepository = userQueryRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.properties = authorizationProperties.getRevocation();
+        this.expirations = new TimingWheel<>(properties.getTick().toMillis(), properties.getWheelSize(),
+                properties.getLevels(), System.currentTimeMillis());
+        this.tombstoneMillis = properties.getTick().toMillis() * properties.getWheelSize();
+        Gauge.builder("authorization.revocations", this, set -> set.activeBans().size()).register(meterRegistry);
+    }
+
+    public boolean isRevoked(UUID id) {
+        if (!properties.isEnabled() || Objects.isNull(id))
+            return false;
+        Revocation revocation = revocations.get(id);
+        return Objects.nonNull(revocation) && revocation.expiration() > System.currentTimeMillis();
+    }
+
+    public Map<UUID, LocalDateTime> activeBans() {
+        long now = System.currentTimeMillis();
+        Map<UUID, LocalDateTime> bans = new HashMap<>();
+        revocations.forEach((id, revocation) -> {
+            if (revocation.expiration() > now)
+                bans.put(id, LocalDateTime.ofInstant(Instant.ofEpochMilli(revocation.expiration()),
+                        ZoneId.systemDefault()));
+        });
+        return bans;
+    }
+
+    public void revoke(UUID id, LocalDateTime until) {
+        revokeAll(List.of(id), until);
+    }
+
+    public void revokeAll(Collection<UUID> ids, LocalDateTime until) {
+        if (!properties.isEnabled())
+            return;
+        long expiration = toMillis(until);
+        long version = System.currentTimeMillis();
+        ids.forEach(id -> apply(id, expiration, version));
+        publish(ids, expiration, version);
+    }
+
+    public void liftAll(Collection<UUID> ids) {
+        if (!properties.isEnabled())
+            return;
+        long version = System.currentTimeMillis();
+        ids.forEach(id -> apply(id, LIFTED, version));
+        publish(ids, LIFTED, version);
+    }
+
+    /**
+     * Aligns the set with the ban of a user changed on the users collection at the given time, sharing the change
+     * with the other nodes only when it differs from the known ban.
+     */
+    public void sync(UUID id, LocalDateTime banExpiration, long changedAt) {
+        if (!properties.isEnabled())
+            return;
+        long now = System.currentTimeMillis();
+        long expiration = Objects.nonNull(banExpiration) ? toMillis(banExpiration) : LIFTED;
+        if (expiration <= now)
+            expiration = LIFTED;
+        Revocation current = revocations.get(id);
+        long known = Objects.isNull(current) || current.expiration() <= now ? LIFTED : current.expiration();
+        if (known != expiration && apply(id, expiration, changedAt))
+            publish(List.of(id), expiration, changedAt);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(Pattern.quote(SEPARATOR), 3);
+        try {
+            apply(UUID.fromString(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed revocation '{}'", String.join(SEPARATOR, parts), e);
+        }
+    }
+
+    /**
+     * Loads the active bans as a change made when the query starts, and lifts the ones no longer active: changes
+     * made after the query started win over it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${magiavventure.authorization.revocation.reseed-interval:PT5M}",
+            fixedDelayString = "${magiavventure.authorization.revocation.reseed-interval:PT5M}")
+    public void seed() {
+        if (!properties.isEnabled())
+            return;
+        long version = System.currentTimeMillis();
+        Set<UUID> active = new HashSet<>();
+        try (Stream<EUser> banned = userQueryRepository.streamBanned(LocalDateTime.now())) {
+            banned.forEach(eUser -> {
+                active.add(eUser.getId());
+                apply(eUser.getId(), toMillis(eUser.getBanExpiration()), version);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to seed revocation set", e);
+            return;
+        }
+        revocations.forEach((id, revocation) -> {
+            if (!active.contains(id) && revocation.expiration() > version)
+                apply(id, LIFTED, version);
+        });
+        log.debug("Seeded revocation set with '{}' banned users", active.size());
+    }
+
+    @Scheduled(fixedDelayString = "${magiavventure.authorization.revocation.tick:PT1S}")
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (UUID id : expirations.advance(now)) {
+            Revocation revocation = revocations.get(id);
+            if (Objects.isNull(revocation))
+                continue;
+            // the deadline of a change that lost the race to schedule against a later one
+            if (revocation.expiration() > now) {
+                expirations.schedule(id, revocation.expiration());
+                continue;
+            }
+            if (!revocations.remove(id, revocation) || revocation.expiration() == LIFTED)
+                continue;
+            log.debug("Ban of user '{}' expired", id);
+            applicationEventPublisher.publishEvent(new BanExpiredEvent(id));
+        }
+    }
+
+    /**
+     * Applies the change unless a later one is already known, returns whether it was applied. Expired bans are
+     * applied as lifts, and lifts are kept until the wheel removes them. The wheel is locked outside of the map
+     * bin lock, so concurrent changes may schedule out of order and the expiration fixes the early deadlines.
+     */
+    private boolean apply(UUID id, long expiration, long version) {
+        long now = System.currentTimeMillis();
+        Revocation revocation = new Revocation(expiration > now ? expiration : LIFTED, version);
+        boolean applied = revocations.compute(id, (key, current) ->
+                Objects.nonNull(current) && current.version() > version ? current : revocation) == revocation;
+        if (applied)
+            expirations.schedule(id, revocation.expiration() == LIFTED ? now + tombstoneMillis : expiration);
+        return applied;
+    }
+
+    /**
+     * Shares the changes with the other nodes, many changes are sent in a single pipeline.
+     */
+    private void publish(Collection<UUID> ids, long expiration, long version) {
+        List<String> messages = ids.stream().map(id -> id + SEPARATOR + expiration + SEPARATOR + version).toList();
+        try {
+            if (messages.size() == 1) {
+                stringRedisTemplate.convertAndSend(properties.getChannel(), messages.get(0));
+                return;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                byte[] channel = properties.getChannel().getBytes(StandardCharsets.UTF_8);
+                messages.forEach(message -> connection.publish(channel, message.getBytes(StandardCharsets.UTF_8)));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Unable to publish '{}' revocation changes to the other nodes", messages.size(), e);
+        }
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private record Revocation(long expiration, long version) {
+    }
+}
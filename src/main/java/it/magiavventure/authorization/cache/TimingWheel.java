@@ -0,0 +1,121 @@
+package it.magiavventure.authorization.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel: every level has the same number of slots and a slot of a level spans a whole
+ * rotation of the level below. Keys are scheduled in the lowest level able to hold their deadline and moved
+ * down while the time advances, so scheduling, cancelling and expiring a key cost O(1).
+ */
+class TimingWheel<K> {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final List<List<Set<K>>> levels = new ArrayList<>();
+    private final Map<K, Long> deadlines = new HashMap<>();
+    private final Map<K, Set<K>> locations = new HashMap<>();
+    private long currentTick;
+
+    TimingWheel(long tickMillis, int wheelSize, int levelCount, long now) {
+        if (tickMillis <= 0 || Integer.bitCount(wheelSize) != 1 || levelCount < 1)
+            throw new IllegalArgumentException("Invalid timing wheel tick, size or levels");
+        this.tickMillis = tickMillis;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        for (int level = 0; level < levelCount; level++) {
+            List<Set<K>> slots = new ArrayList<>(wheelSize);
+            for (int slot = 0; slot < wheelSize; slot++)
+                slots.add(new HashSet<>());
+            levels.add(slots);
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Schedules the key, replacing its previous deadline. Returns false when the deadline is already reached.
+     */
+    synchronized boolean schedule(K key, long deadline) {
+        cancel(key);
+        long deadlineTick = toTick(deadline);
+        if (deadlineTick <= currentTick)
+            return false;
+        deadlines.put(key, deadlineTick);
+        place(key, deadlineTick);
+        return true;
+    }
+
+    synchronized void cancel(K key) {
+        deadlines.remove(key);
+        Set<K> location = locations.remove(key);
+        if (Objects.nonNull(location))
+            location.remove(key);
+    }
+
+    synchronized int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Moves the wheel up to the given time and returns the keys whose deadline has been reached.
+     */
+    synchronized List<K> advance(long now) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels.size() - 1; level > 0; level--) {
+                if ((currentTick & ((1L << bits * level) - 1)) == 0)
+                    cascade(slot(level, currentTick >> bits * level), expired);
+            }
+            cascade(slot(0, currentTick), expired);
+        }
+        return expired;
+    }
+
+    private void cascade(Set<K> slot, List<K> expired) {
+        if (slot.isEmpty())
+            return;
+        List<K> keys = new ArrayList<>(slot);
+        slot.clear();
+        for (K key : keys) {
+            long deadlineTick = deadlines.get(key);
+            if (deadlineTick <= currentTick) {
+                deadlines.remove(key);
+                locations.remove(key);
+                expired.add(key);
+            } else {
+                place(key, deadlineTick);
+            }
+        }
+    }
+
+    private void place(K key, long deadlineTick) {
+        int level = levelOf(deadlineTick);
+        Set<K> location = slot(level, deadlineTick >> bits * level);
+        location.add(key);
+        locations.put(key, location);
+    }
+
+    private int levelOf(long deadlineTick) {
+        long delta = deadlineTick - currentTick;
+        int level = 0;
+        while (level < levels.size() - 1 && delta >= 1L << bits * (level + 1))
+            level++;
+        return level;
+    }
+
+    private Set<K> slot(int level, long position) {
+        return levels.get(level).get((int) (position & mask));
+    }
+
+    private long toTick(long time) {
+        return (time + tickMillis - 1) / tickMillis;
+    }
+}
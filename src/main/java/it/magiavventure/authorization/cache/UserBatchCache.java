@@ -0,0 +1,91 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.mongo.entity.EUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Multi key access to the user caches, the {@link LayeredCache}s reach Redis once per operation
+ * while any other cache is accessed key by key.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserBatchCache {
+    public static final String USER_CACHE = "user";
+    public static final String USER_VIEW_CACHE = "user_view";
+
+    private final CacheManager cacheManager;
+    private final UserPageGeneration userPageGeneration;
+
+    public Map<UUID, EUser> getUsers(List<UUID> ids) {
+        Map<UUID, EUser> users = new HashMap<>();
+        Cache cache = cacheManager.getCache(USER_CACHE);
+        if (Objects.isNull(cache))
+            return users;
+        if (cache instanceof LayeredCache layeredCache) {
+            layeredCache.getAll(ids).forEach((id, user) -> users.put((UUID) id, (EUser) user));
+            return users;
+        }
+        ids.forEach(id -> {
+            EUser user = cache.get(id, EUser.class);
+            if (Objects.nonNull(user))
+                users.put(id, user);
+        });
+        return users;
+    }
+
+    public void putUsers(Collection<EUser> users) {
+        Cache cache = cacheManager.getCache(USER_CACHE);
+        if (Objects.isNull(cache) || users.isEmpty())
+            return;
+        if (cache instanceof LayeredCache layeredCache) {
+            Map<UUID, EUser> values = new HashMap<>();
+            users.forEach(user -> values.put(user.getId(), user));
+            layeredCache.putAll(values);
+            return;
+        }
+        users.forEach(user -> cache.put(user.getId(), user));
+    }
+
+    /**
+     * Evicts the users from every cache holding them, the users lists are rebuilt on the next read.
+     */
+    public void evictUsers(Collection<UUID> ids) {
+        if (ids.isEmpty())
+            return;
+        evictEntries(ids);
+        Cache users = cacheManager.getCache(UserListCache.CACHE_NAME);
+        if (Objects.nonNull(users))
+            users.evict(UserListCache.KEY);
+    }
+
+    /**
+     * Evicts the users and moves the pages to the next generation, leaving the full users list to be updated entry
+     * by entry.
+     */
+    public void evictEntries(Collection<UUID> ids) {
+        if (ids.isEmpty())
+            return;
+        for (String cacheName : List.of(USER_CACHE, USER_VIEW_CACHE)) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache instanceof LayeredCache layeredCache)
+                layeredCache.evictAll(ids);
+            else if (Objects.nonNull(cache))
+                ids.forEach(cache::evict);
+        }
+        evictPages();
+    }
+
+    public void evictPages() {
+        userPageGeneration.next();
+    }
+}
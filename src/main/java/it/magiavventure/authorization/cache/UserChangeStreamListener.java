@@ -0,0 +1,294 @@
+package it.magiavventure.authorization.cache;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.mongo.entity.EUser;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonBinary;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.UuidRepresentation;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListener;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Subscription;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the user caches up to date with the changes written to the users collection outside of this service
+ * (e.g. admin scripts, migrations or other services) listening to its change stream: the changed users are
+ * evicted and updated in the users list, their names are added to the {@link UserNameFilter} and their bans are
+ * shared through the {@link RevocationSet}. The
+ * resume token of the last handled change is kept in Redis, so a restarted node continues from there; when the
+ * token is no longer valid the user caches are cleared and the stream starts again from the current changes.
+ * <p>
+ * Since the caches and the revocations are shared, a single node consumes the stream: the one holding a Redis
+ * lease, renewed on every check. The other nodes take it over when it expires.
+ */
+@Slf4j
+@Component
+public class UserChangeStreamListener implements MessageListener<ChangeStreamDocument<Document>, EUser> {
+    private static final String CHANGES_METRIC = "authorization.cache.change.stream.events";
+    private static final String ID = "_id";
+    private static final Set<Integer> RESUME_ERRORS = Set.of(260, 280, 286);
+    private static final List<String> USER_CACHES = List.of(UserBatchCache.USER_CACHE, UserBatchCache.USER_VIEW_CACHE,
+            UserListCache.CACHE_NAME);
+    private static final RedisScript<Long> ACQUIRE_LEASE = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end
+            if redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 end
+            return 0
+            """, Long.class);
+    private static final RedisScript<Long> RELEASE_LEASE = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end
+            return 0
+            """, Long.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheManager cacheManager;
+    private final UserBatchCache userBatchCache;
+    private final UserListCache userListCache;
+    private final UserTombstones userTombstones;
+    private final UserNameFilter userNameFilter;
+    private final RevocationSet revocationSet;
+    private final UserMapper userMapper;
+    private final MeterRegistry meterRegistry;
+    private final AuthorizationProperties.ChangeStream properties;
+    private final String nodeId = UUID.randomUUID().toString();
+    private MessageListenerContainer container;
+    private Subscription subscription;
+    private volatile boolean resumeFailed;
+
+    public UserChangeStreamListener(MongoTemplate mongoTemplate,
+                                    StringRedisTemplate stringRedisTemplate,
+                                    CacheManager cacheManager,
+                                    UserBatchCache userBatchCache,
+                                    UserListCache userListCache,
+                                    UserTombstones userTombstones,
+                                    UserNameFilter userNameFilter,
+                                    RevocationSet revocationSet,
+                                    UserMapper userMapper,
+                                    MeterRegistry meterRegistry,
+                                    AuthorizationProperties authorizationProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheManager = cacheManager;
+        this.userBatchCache = userBatchCache;
+        this.userListCache = userListCache;
+        this.userTombstones = userTombstones;
+        this.userNameFilter = userNameFilter;
+        this.revocationSet = revocationSet;
+        this.userMapper = userMapper;
+        this.meterRegistry = meterRegistry;
+        this.properties = authorizationProperties.getChangeStream();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!properties.isEnabled() || Objects.nonNull(container))
+            return;
+        container = new DefaultMessageListenerContainer(mongoTemplate);
+        container.start();
+        watch();
+    }
+
+    /**
+     * Renews the lease and subscribes when the stream stopped, e.g. after a connection failure or an invalid
+     * resume token, or stops consuming it when the lease is held by another node.
+     */
+    @Scheduled(fixedDelayString = "${magiavventure.authorization.change-stream.check-interval:PT30S}")
+    public synchronized void watch() {
+        if (Objects.isNull(container))
+            return;
+        if (!acquireLease()) {
+            if (Objects.nonNull(subscription)) {
+                log.info("Change stream lease of the users collection held by another node, unsubscribing");
+                container.remove(subscription);
+                subscription = null;
+            }
+            return;
+        }
+        if (Objects.nonNull(subscription) && !resumeFailed && subscription.isActive())
+            return;
+        if (Objects.nonNull(subscription))
+            log.warn("Change stream of the users collection is not active, subscribing again");
+        subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (Objects.isNull(container))
+            return;
+        container.stop();
+        container = null;
+        subscription = null;
+        releaseLease();
+    }
+
+    synchronized boolean isWatching() {
+        return Objects.nonNull(subscription) && subscription.isActive();
+    }
+
+    @Override
+    public void onMessage(Message<ChangeStreamDocument<Document>, EUser> message) {
+        ChangeStreamDocument<Document> change = message.getRaw();
+        meterRegistry.counter(CHANGES_METRIC, "operation", change.getOperationTypeString()).increment();
+        switch (change.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> refresh(documentId(change.getDocumentKey()), message.getBody(),
+                    changedAt(change));
+            case DELETE -> evict(documentId(change.getDocumentKey()), changedAt(change));
+            case INVALIDATE -> resumeFailed = true;
+            case DROP, DROP_DATABASE, RENAME -> clearCaches();
+            default -> log.debug("Ignoring change '{}' of the users collection", change.getOperationTypeString());
+        }
+        if (change.getOperationType() != OperationType.INVALIDATE)
+            saveResumeToken(change.getResumeToken());
+    }
+
+    private void refresh(UUID id, EUser eUser, long changedAt) {
+        log.debug("User '{}' changed on the users collection", id);
+        if (Objects.isNull(eUser)) {
+            evict(id, changedAt);
+            return;
+        }
+        userBatchCache.evictEntries(List.of(id));
+        userTombstones.remove(id);
+        userListCache.upsert(userMapper.map(eUser));
+        userNameFilter.add(eUser.getName());
+        revocationSet.sync(id, eUser.getBanExpiration(), changedAt);
+    }
+
+    private void evict(UUID id, long changedAt) {
+        log.debug("User '{}' deleted from the users collection", id);
+        userBatchCache.evictEntries(List.of(id));
+        userListCache.discard(id);
+        revocationSet.sync(id, null, changedAt);
+    }
+
+    private void clearCaches() {
+        log.debug("Clearing the user caches '{}'", USER_CACHES);
+        USER_CACHES.forEach(cacheName -> {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (Objects.nonNull(cache))
+                cache.clear();
+        });
+        userBatchCache.evictPages();
+    }
+
+    private void subscribe() {
+        if (Objects.nonNull(subscription))
+            container.remove(subscription);
+        if (resumeFailed) {
+            forgetResumeToken();
+            clearCaches();
+            resumeFailed = false;
+        }
+        BsonDocument resumeToken = loadResumeToken();
+        ChangeStreamRequest.ChangeStreamRequestBuilder<EUser> request = ChangeStreamRequest.builder(this)
+                .collection(mongoTemplate.getCollectionName(EUser.class))
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (Objects.nonNull(resumeToken))
+            request.resumeAfter(resumeToken);
+        subscription = container.register(request.build(), EUser.class, this::onError);
+    }
+
+    private void onError(Throwable error) {
+        for (Throwable cause = error; Objects.nonNull(cause); cause = cause.getCause()) {
+            if (cause instanceof MongoServerException e && RESUME_ERRORS.contains(e.getCode())) {
+                log.warn("Unable to resume the change stream of the users collection, restarting it", e);
+                resumeFailed = true;
+                return;
+            }
+        }
+        log.warn("Error on the change stream of the users collection", error);
+    }
+
+    private boolean acquireLease() {
+        try {
+            Long acquired = stringRedisTemplate.execute(ACQUIRE_LEASE, List.of(properties.getLeaseKey()), nodeId,
+                    String.valueOf(properties.getLeaseTtl().toMillis()));
+            return Objects.nonNull(acquired) && acquired == 1L;
+        } catch (RuntimeException e) {
+            log.warn("Unable to acquire the change stream lease", e);
+            return false;
+        }
+    }
+
+    private void releaseLease() {
+        try {
+            stringRedisTemplate.execute(RELEASE_LEASE, List.of(properties.getLeaseKey()), nodeId);
+        } catch (RuntimeException e) {
+            log.warn("Unable to release the change stream lease", e);
+        }
+    }
+
+    private BsonDocument loadResumeToken() {
+        try {
+            String resumeToken = stringRedisTemplate.opsForValue().get(properties.getResumeTokenKey());
+            return Objects.nonNull(resumeToken) ? BsonDocument.parse(resumeToken) : null;
+        } catch (RuntimeException e) {
+            log.warn("Unable to load the change stream resume token, starting from the current changes", e);
+            return null;
+        }
+    }
+
+    private void saveResumeToken(BsonDocument resumeToken) {
+        if (Objects.isNull(resumeToken))
+            return;
+        try {
+            stringRedisTemplate.opsForValue().set(properties.getResumeTokenKey(), resumeToken.toJson());
+        } catch (RuntimeException e) {
+            log.warn("Unable to save the change stream resume token", e);
+        }
+    }
+
+    private void forgetResumeToken() {
+        try {
+            stringRedisTemplate.delete(properties.getResumeTokenKey());
+        } catch (RuntimeException e) {
+            log.warn("Unable to delete the change stream resume token", e);
+        }
+    }
+
+    /**
+     * Time of the change on the cluster, the wall time when the server reports it.
+     */
+    private static long changedAt(ChangeStreamDocument<Document> change) {
+        if (Objects.nonNull(change.getWallTime()))
+            return change.getWallTime().getValue();
+        if (Objects.nonNull(change.getClusterTime()))
+            return change.getClusterTime().getTime() * 1000L;
+        return System.currentTimeMillis();
+    }
+
+    private static UUID documentId(BsonDocument documentKey) {
+        BsonValue id = documentKey.get(ID);
+        BsonBinary binary = id.asBinary();
+        return binary.getType() == BsonBinarySubType.UUID_LEGACY.getValue()
+                ? binary.asUuid(UuidRepresentation.JAVA_LEGACY)
+                : binary.asUuid();
+    }
+}
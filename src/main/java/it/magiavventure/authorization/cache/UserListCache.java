@@ -0,0 +1,148 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.mongo.model.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the cached, name ordered, users list up to date applying single entry changes.
+ * When the cached list doesn't match the expected state (drift) it's evicted and rebuilt on the next read.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserListCache {
+    public static final String CACHE_NAME = "users";
+    public static final String KEY = "all";
+    private static final Comparator<User> ORDER = Comparator.comparing(User::getName,
+            Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final CacheManager cacheManager;
+    private final Lock lock = new ReentrantLock();
+
+    public void insert(User user) {
+        update(users -> {
+            if (indexOf(users, user.getId()) >= 0)
+                return false;
+            add(users, user);
+            return true;
+        });
+    }
+
+    public void replace(User user) {
+        update(users -> {
+            int index = indexOf(users, user.getId());
+            if (index < 0)
+                return false;
+            users.remove(index);
+            add(users, user);
+            return true;
+        });
+    }
+
+    /**
+     * Inserts or replaces the user, for changes that may already be applied (e.g. change stream events).
+     */
+    public void upsert(User user) {
+        update(users -> {
+            int index = indexOf(users, user.getId());
+            if (index >= 0)
+                users.remove(index);
+            add(users, user);
+            return true;
+        });
+    }
+
+    /**
+     * Removes the user if present, for changes that may already be applied (e.g. change stream events).
+     */
+    public void discard(UUID id) {
+        update(users -> {
+            int index = indexOf(users, id);
+            if (index >= 0)
+                users.remove(index);
+            return true;
+        });
+    }
+
+    public void remove(UUID id) {
+        update(users -> {
+            int index = indexOf(users, id);
+            if (index < 0)
+                return false;
+            users.remove(index);
+            return true;
+        });
+    }
+
+    /**
+     * Applies the change to the cached list; on the layered cache the change is applied atomically on Redis, so
+     * the concurrent changes of this and the other nodes aren't lost without a local lock, the other caches are
+     * updated under the local lock.
+     */
+    private void update(Predicate<List<User>> change) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (Objects.isNull(cache))
+            return;
+        try {
+            if (cache instanceof LayeredCache layeredCache) {
+                layeredCache.update(KEY, cached -> apply(cached, change));
+                return;
+            }
+            lock.lock();
+            try {
+                Object cached = cache.get(KEY, List.class);
+                if (Objects.isNull(cached))
+                    return;
+                List<User> users = apply(cached, change);
+                if (Objects.nonNull(users))
+                    cache.put(KEY, users);
+                else
+                    cache.evict(KEY);
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to update cache '{}', evicting key '{}'", CACHE_NAME, KEY, e);
+            cache.evict(KEY);
+        }
+    }
+
+    /**
+     * @return the changed copy of the list, null on drift
+     */
+    @SuppressWarnings("unchecked")
+    private static List<User> apply(Object cached, Predicate<List<User>> change) {
+        List<User> users = new ArrayList<>((List<User>) cached);
+        if (change.test(users))
+            return users;
+        log.debug("Detected drift on cache '{}', evicting key '{}'", CACHE_NAME, KEY);
+        return null;
+    }
+
+    private static void add(List<User> users, User user) {
+        int index = Collections.binarySearch(users, user, ORDER);
+        users.add(index < 0 ? -index - 1 : index, user);
+    }
+
+    private static int indexOf(List<User> users, UUID id) {
+        for (int i = 0; i < users.size(); i++) {
+            if (Objects.equals(users.get(i).getId(), id))
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,193 @@
+package it.magiavventure.authorization.cache;
+
+import com.ibm.icu.text.Collator;
+import com.ibm.icu.util.ULocale;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Node local Bloom filter over the normalized user names: a negative answer means the name is free
+ * without querying Mongo. Names are normalized to their ICU collation key with the locale and strength of
+ * {@link UserQueryRepository#NAME_COLLATION}, so every name the unique index considers equal gets the same key.
+ * Names added on any node, or written by other writers and read from the change stream, are replicated through
+ * Redis pub/sub; names removed or renamed are only counted and dropped by the next rebuild. The filter is also
+ * rebuilt on a fixed interval, to repair the names whose message was lost.
+ */
+@Slf4j
+@Component
+public class UserNameFilter implements MessageListener {
+    private static final String METRIC_PREFIX = "authorization.name.filter";
+    private static final Collator NAME_COLLATOR = nameCollator();
+
+    private final UserQueryRepository userQueryRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AuthorizationProperties.NameFilter properties;
+    private final Timer rebuildTimer;
+    private final Counter negativeCounter;
+    private final Counter truePositiveCounter;
+    private final Counter falsePositiveCounter;
+    private final AtomicLong stale = new AtomicLong();
+    private final Lock rebuildLock = new ReentrantLock();
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+    private volatile long builtAt;
+
+    public UserNameFilter(UserQueryRepository userQueryRepository,
+                          StringRedisTemplate stringRedisTemplate,
+                          AuthorizationProperties authorizationProperties,
+                          MeterRegistry meterRegistry) {
+        this.userQueryRepository = userQueryRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = authorizationProperties.getNameFilter();
+        this.rebuildTimer = Timer.builder(METRIC_PREFIX + ".rebuild").register(meterRegistry);
+        this.negativeCounter = lookupCounter(meterRegistry, "negative");
+        this.truePositiveCounter = lookupCounter(meterRegistry, "true_positive");
+        this.falsePositiveCounter = lookupCounter(meterRegistry, "false_positive");
+        registerGauge(meterRegistry, "insertions", BloomFilter::insertions);
+        registerGauge(meterRegistry, "bits", BloomFilter::bitSize);
+        registerGauge(meterRegistry, "expected.fpp", BloomFilter::expectedFpp);
+        Gauge.builder(METRIC_PREFIX + ".stale", stale, AtomicLong::get).register(meterRegistry);
+    }
+
+    public boolean mightContain(String name) {
+        BloomFilter current = filter;
+        if (!properties.isEnabled() || Objects.isNull(current))
+            return true;
+        boolean mightContain = current.mightContain(normalize(name));
+        if (!mightContain)
+            negativeCounter.increment();
+        return mightContain;
+    }
+
+    public void recordLookup(boolean exists) {
+        if (!properties.isEnabled() || Objects.isNull(filter))
+            return;
+        if (exists)
+            truePositiveCounter.increment();
+        else
+            falsePositiveCounter.increment();
+    }
+
+    public void add(String name) {
+        if (!properties.isEnabled() || Objects.isNull(name))
+            return;
+        String normalizedName = normalize(name);
+        addLocal(normalizedName);
+        try {
+            stringRedisTemplate.convertAndSend(properties.getChannel(), normalizedName);
+        } catch (RuntimeException e) {
+            log.warn("Unable to publish user name '{}' to the other nodes", normalizedName, e);
+        }
+    }
+
+    public void markStale() {
+        if (properties.isEnabled())
+            stale.incrementAndGet();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        addLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        if (properties.isEnabled())
+            rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${magiavventure.authorization.name-filter.check-interval:PT1M}")
+    public void rebuildIfNeeded() {
+        if (!properties.isEnabled())
+            return;
+        BloomFilter current = filter;
+        if (Objects.isNull(current)
+                || current.expectedFpp() > properties.getMaxFpp()
+                || stale.get() > current.insertions() * properties.getMaxStaleRatio()
+                || System.currentTimeMillis() - builtAt >= properties.getRebuildInterval().toMillis())
+            rebuild();
+    }
+
+    public void rebuild() {
+        if (!rebuildLock.tryLock())
+            return;
+        Timer.Sample sample = Timer.start();
+        try {
+            BloomFilter current = filter;
+            long expectedInsertions = Math.max(properties.getExpectedInsertions(),
+                    Objects.isNull(current) ? 0 : current.insertions() * 2);
+            BloomFilter next = new BloomFilter(expectedInsertions, properties.getFpp());
+            long startedAt = System.currentTimeMillis();
+            building = next;
+            stale.set(0);
+            try (Stream<String> names = userQueryRepository.streamNames()) {
+                names.filter(Objects::nonNull)
+                        .map(UserNameFilter::normalize)
+                        .forEach(next::put);
+            }
+            filter = next;
+            builtAt = startedAt;
+            log.debug("Rebuilt user name filter with '{}' names", next.insertions());
+        } catch (RuntimeException e) {
+            log.warn("Unable to rebuild user name filter", e);
+        } finally {
+            building = null;
+            sample.stop(rebuildTimer);
+            rebuildLock.unlock();
+        }
+    }
+
+    private void addLocal(String normalizedName) {
+        BloomFilter next = building;
+        BloomFilter current = filter;
+        if (Objects.nonNull(current))
+            current.put(normalizedName);
+        if (Objects.nonNull(next))
+            next.put(normalizedName);
+    }
+
+    private void registerGauge(MeterRegistry meterRegistry, String name, ToDoubleFunction<BloomFilter> value) {
+        Gauge.builder(METRIC_PREFIX + "." + name, this, nameFilter -> {
+            BloomFilter current = nameFilter.filter;
+            return Objects.isNull(current) ? Double.NaN : value.applyAsDouble(current);
+        }).register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(METRIC_PREFIX + ".lookups")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    static String normalize(String name) {
+        return Base64.getEncoder().withoutPadding().encodeToString(NAME_COLLATOR.getCollationKey(name).toByteArray());
+    }
+
+    private static Collator nameCollator() {
+        Collator collator = Collator.getInstance(
+                new ULocale(UserQueryRepository.NAME_COLLATION.getLocale().asString()));
+        collator.setStrength(Collator.SECONDARY);
+        return collator.freeze();
+    }
+}
@@ -0,0 +1,33 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+
+/**
+ * Generation of the users pages, part of their cache key: a change of the users moves every node to the next
+ * generation with a single Redis counter increment, instead of clearing the pages cache, and the pages of the old
+ * generations are left to expire.
+ */
+@Component
+public class UserPageGeneration {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+
+    public UserPageGeneration(StringRedisTemplate stringRedisTemplate,
+                              AuthorizationProperties authorizationProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = authorizationProperties.getUsers().getPageGenerationKey();
+    }
+
+    public long current() {
+        String generation = stringRedisTemplate.opsForValue().get(key);
+        return Objects.isNull(generation) ? 0 : Long.parseLong(generation);
+    }
+
+    public void next() {
+        stringRedisTemplate.opsForValue().increment(key);
+    }
+}
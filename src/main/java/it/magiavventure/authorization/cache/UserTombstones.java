@@ -0,0 +1,64 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Short lived markers of the user ids known to be missing, so that repeated lookups of unknown or deleted
+ * users don't reach the database until the marker expires or the user is created.
+ */
+@Component
+public class UserTombstones {
+    public static final String CACHE_NAME = "user_tombstone";
+
+    private final CacheManager cacheManager;
+    private final AuthorizationProperties.Tombstone properties;
+    private final Counter hits;
+
+    public UserTombstones(CacheManager cacheManager,
+                          AuthorizationProperties authorizationProperties,
+                          MeterRegistry meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.properties = authorizationProperties.getCache().getTombstone();
+        this.hits = Counter.builder("authorization.cache.negative.hits")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    public boolean contains(UUID id) {
+        Cache cache = cache();
+        if (Objects.isNull(cache) || Objects.isNull(cache.get(id)))
+            return false;
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Like a load on a miss the other nodes aren't notified, a tombstone can't be newer than what they hold.
+     */
+    public void add(UUID id) {
+        Cache cache = cache();
+        if (cache instanceof LayeredCache layeredCache)
+            layeredCache.putAll(Map.of(id, Boolean.TRUE));
+        else if (Objects.nonNull(cache))
+            cache.put(id, Boolean.TRUE);
+    }
+
+    public void remove(UUID id) {
+        Cache cache = cache();
+        if (Objects.nonNull(cache))
+            cache.evict(id);
+    }
+
+    private Cache cache() {
+        return properties.isEnabled() ? cacheManager.getCache(CACHE_NAME) : null;
+    }
+}
@@ -0,0 +1,137 @@
+package it.magiavventure.authorization.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "magiavventure.authorization")
+public class AuthorizationProperties {
+
+    private Cache cache = new Cache();
+    private Users users = new Users();
+    private NameFilter nameFilter = new NameFilter();
+    private Revocation revocation = new Revocation();
+    private ChangeStream changeStream = new ChangeStream();
+    private Signing signing = new Signing();
+    private Refresh refresh = new Refresh();
+
+    @Data
+    public static class Cache {
+        private String invalidationChannel = "magiavventure:authorization:cache-invalidation";
+        private Codec codec = Codec.JDK;
+        private boolean authorityMask;
+        private Local local = new Local();
+        private DistributedLock distributedLock = new DistributedLock();
+        private RefreshAhead refreshAhead = new RefreshAhead();
+        private Tombstone tombstone = new Tombstone();
+    }
+
+    @Data
+    public static class Tombstone {
+        private boolean enabled;
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class RefreshAhead {
+        private boolean enabled;
+        private int poolSize = 2;
+        private int queueCapacity = 100;
+        private Map<String, Duration> windows = new HashMap<>();
+    }
+
+    public enum Codec {
+        JDK, COMPACT
+    }
+
+    @Data
+    public static class DistributedLock {
+        private boolean enabled;
+        private Duration ttl = Duration.ofSeconds(2);
+        private Duration waitTimeout = Duration.ofSeconds(1);
+        private Duration pollInterval = Duration.ofMillis(20);
+    }
+
+    @Data
+    public static class Local {
+        private boolean enabled;
+        private Map<String, LocalCache> caches = new HashMap<>();
+    }
+
+    @Data
+    public static class Users {
+        private int defaultPageSize = 20;
+        private int maxPageSize = 100;
+        private String pageGenerationKey = "magiavventure:authorization:users-page-generation";
+    }
+
+    @Data
+    public static class NameFilter {
+        private boolean enabled;
+        private String channel = "magiavventure:authorization:user-name-keys";
+        private long expectedInsertions = 100_000;
+        private double fpp = 0.01;
+        private double maxFpp = 0.05;
+        private double maxStaleRatio = 0.1;
+        private Duration checkInterval = Duration.ofMinutes(1);
+        private Duration rebuildInterval = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Revocation {
+        private boolean enabled;
+        private String channel = "magiavventure:authorization:revocations";
+        private String claim = "id";
+        private Duration tick = Duration.ofSeconds(1);
+        private int wheelSize = 64;
+        private int levels = 4;
+        private Duration reseedInterval = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class ChangeStream {
+        private boolean enabled;
+        private String resumeTokenKey = "magiavventure:authorization:users-resume-token";
+        private Duration checkInterval = Duration.ofSeconds(30);
+        private String leaseKey = "magiavventure:authorization:users-change-stream-lease";
+        private Duration leaseTtl = Duration.ofSeconds(90);
+    }
+
+    @Data
+    public static class Signing {
+        private boolean enabled;
+        private String header = "mg-a-token-es";
+        private String issuer = "magiavventure-authorization";
+        private Duration ttl = Duration.ofHours(1);
+        private Duration jwksMaxAge = Duration.ofHours(1);
+        private boolean authorityMask;
+        private String activeKey;
+        private Map<String, SigningKey> keys = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class Refresh {
+        private boolean enabled;
+        private String header = "mg-a-refresh-token";
+        private String keyPrefix = "magiavventure:authorization:refresh:";
+        private Duration ttl = Duration.ofDays(30);
+        private LocalCache rejected = new LocalCache();
+    }
+
+    @Data
+    public static class SigningKey {
+        private String privateKey;
+        private String publicKey;
+    }
+
+    @Data
+    public static class LocalCache {
+        private long maximumSize = 10_000;
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,156 @@
+package it.magiavventure.authorization.configuration;
+
+import it.magiavventure.authorization.cache.CacheInvalidationBus;
+import it.magiavventure.authorization.cache.CacheLoadLock;
+import it.magiavventure.authorization.cache.CacheRefreshExecutor;
+import it.magiavventure.authorization.cache.CacheRefresher;
+import it.magiavventure.authorization.cache.CompactCacheSerializer;
+import it.magiavventure.authorization.cache.LayeredCacheManager;
+import it.magiavventure.authorization.cache.RedisCacheBatch;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.cache.UserNameFilter;
+import it.magiavventure.authorization.cache.UserTombstones;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+
+@Configuration
+@EnableCaching
+@EnableConfigurationProperties({AuthorizationProperties.class, CacheProperties.class})
+public class CacheConfiguration {
+
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate stringRedisTemplate,
+                                                     AuthorizationProperties authorizationProperties) {
+        return new CacheInvalidationBus(stringRedisTemplate,
+                authorizationProperties.getCache().getInvalidationChannel());
+    }
+
+    @Bean
+    public RedisMessageListenerContainer authorizationMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                               CacheInvalidationBus cacheInvalidationBus,
+                                                                               UserNameFilter userNameFilter,
+                                                                               RevocationSet revocationSet,
+                                                                               AuthorizationProperties authorizationProperties,
+                                                                               Environment environment) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("authorization-listener-");
+            taskExecutor.setVirtualThreads(true);
+            container.setTaskExecutor(taskExecutor);
+        }
+        if (authorizationProperties.getCache().getLocal().isEnabled())
+            container.addMessageListener(cacheInvalidationBus,
+                    new ChannelTopic(authorizationProperties.getCache().getInvalidationChannel()));
+        if (authorizationProperties.getNameFilter().isEnabled())
+            container.addMessageListener(userNameFilter,
+                    new ChannelTopic(authorizationProperties.getNameFilter().getChannel()));
+        if (authorizationProperties.getRevocation().isEnabled())
+            container.addMessageListener(revocationSet,
+                    new ChannelTopic(authorizationProperties.getRevocation().getChannel()));
+        return container;
+    }
+
+    @Bean
+    public CacheRefreshExecutor cacheRefreshExecutor(AuthorizationProperties authorizationProperties,
+                                                     Environment environment) {
+        AuthorizationProperties.RefreshAhead refreshAhead = authorizationProperties.getCache().getRefreshAhead();
+        return new CacheRefreshExecutor(refreshAhead.getPoolSize(), refreshAhead.getQueueCapacity(),
+                Threading.VIRTUAL.isActive(environment));
+    }
+
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                     CacheProperties cacheProperties,
+                                     ObjectProvider<RedisCacheConfiguration> redisCacheConfiguration,
+                                     AuthorizationProperties authorizationProperties,
+                                     CacheInvalidationBus cacheInvalidationBus,
+                                     StringRedisTemplate stringRedisTemplate,
+                                     ResourceLoader resourceLoader,
+                                     CacheRefreshExecutor cacheRefreshExecutor,
+                                     MeterRegistry meterRegistry) {
+        RedisCacheConfiguration defaults = redisCacheConfiguration.getIfAvailable(() ->
+                createRedisCacheConfiguration(cacheProperties, authorizationProperties.getCache(),
+                        resourceLoader.getClassLoader()));
+        RedisCacheManager redisCacheManager = RedisCacheManager
+                .builder(RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory, BatchStrategies.scan(1000)))
+                .cacheDefaults(defaults)
+                .withCacheConfiguration(UserTombstones.CACHE_NAME,
+                        defaults.entryTtl(authorizationProperties.getCache().getTombstone().getTtl()))
+                .initialCacheNames(new LinkedHashSet<>(cacheProperties.getCacheNames()))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+
+        AuthorizationProperties.Local local = authorizationProperties.getCache().getLocal();
+        AuthorizationProperties.DistributedLock distributedLock = authorizationProperties.getCache().getDistributedLock();
+        return new LayeredCacheManager(redisCacheManager,
+                local.isEnabled() ? local.getCaches() : Map.of(),
+                cacheInvalidationBus,
+                distributedLock.isEnabled() ? new CacheLoadLock(stringRedisTemplate, distributedLock) : null,
+                createRefreshers(authorizationProperties.getCache().getRefreshAhead(),
+                        cacheProperties.getRedis().getTimeToLive(), cacheRefreshExecutor, meterRegistry),
+                meterRegistry,
+                new RedisCacheBatch(redisConnectionFactory));
+    }
+
+    private Map<String, CacheRefresher> createRefreshers(AuthorizationProperties.RefreshAhead refreshAhead,
+                                                         Duration ttl,
+                                                         CacheRefreshExecutor cacheRefreshExecutor,
+                                                         MeterRegistry meterRegistry) {
+        Map<String, CacheRefresher> refreshers = new HashMap<>();
+        if (!refreshAhead.isEnabled() || Objects.isNull(ttl) || ttl.isZero())
+            return refreshers;
+        refreshAhead.getWindows().forEach((cacheName, window) -> refreshers.put(cacheName,
+                new CacheRefresher(cacheName, cacheRefreshExecutor, ttl, window, meterRegistry)));
+        return refreshers;
+    }
+
+    private RedisCacheConfiguration createRedisCacheConfiguration(CacheProperties cacheProperties,
+                                                                  AuthorizationProperties.Cache cache,
+                                                                  ClassLoader classLoader) {
+        CacheProperties.Redis redisProperties = cacheProperties.getRedis();
+        RedisSerializer<Object> serializer = switch (cache.getCodec()) {
+            case JDK -> new JdkSerializationRedisSerializer(classLoader);
+            case COMPACT -> new CompactCacheSerializer(classLoader, cache.isAuthorityMask());
+        };
+        RedisCacheConfiguration configuration = RedisCacheConfiguration
+                .defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+        if (Objects.nonNull(redisProperties.getTimeToLive()))
+            configuration = configuration.entryTtl(redisProperties.getTimeToLive());
+        if (Objects.nonNull(redisProperties.getKeyPrefix()))
+            configuration = configuration.prefixCacheNameWith(redisProperties.getKeyPrefix());
+        if (!redisProperties.isCacheNullValues())
+            configuration = configuration.disableCachingNullValues();
+        if (!redisProperties.isUseKeyPrefix())
+            configuration = configuration.disableKeyPrefix();
+        return configuration;
+    }
+}
@@ -0,0 +1,19 @@
+package it.magiavventure.authorization.configuration;
+
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+@Configuration
+@RequiredArgsConstructor
+public class MongoConfiguration {
+
+    private final UserQueryRepository userQueryRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        userQueryRepository.ensureNameIndex();
+    }
+}
@@ -0,0 +1,21 @@
+package it.magiavventure.authorization.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "magiavventure.lib.common.errors")
+public class ReactiveErrorProperties {
+
+    private Map<String, ErrorMessage> serviceErrorsMessages = new HashMap<>();
+
+    @Data
+    public static class ErrorMessage {
+        private String code;
+        private String message;
+        private int status;
+    }
+}
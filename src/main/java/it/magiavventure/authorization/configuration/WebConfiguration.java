@@ -0,0 +1,32 @@
+package it.magiavventure.authorization.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.operation.RevocationInterceptor;
+import it.magiavventure.jwt.service.JwtService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WebConfiguration implements WebMvcConfigurer {
+
+    private final RevocationSet revocationSet;
+    private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+    private final AuthorizationProperties authorizationProperties;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (authorizationProperties.getRevocation().isEnabled())
+            registry.addInterceptor(new RevocationInterceptor(revocationSet, jwtService, objectMapper,
+                    authorizationProperties, meterRegistry))
+                    .addPathPatterns("/v1/**");
+    }
+}
@@ -4,12 +4,45 @@ import it.magiavventure.common.error.MagiavventureException;
 import it.magiavventure.common.model.Error;
 import lombok.Getter;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Getter
 public class AuthorizationException extends MagiavventureException {
     public static final String USER_EXISTS = "user-exists";
     public static final String USER_NOT_FOUND = "user-not-found";
     public static final String USER_BLOCKED= "user-blocked";
+    public static final String INVALID_CURSOR = "invalid-cursor";
+    public static final String USER_CONFLICT = "user-conflict";
+    public static final String INVALID_REFRESH_TOKEN = "invalid-refresh-token";
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final Map<String, Error> TEMPLATES = new ConcurrentHashMap<>();
+
     public AuthorizationException(Error error) {
         super(error);
     }
+
+    /**
+     * Fast path for the errors that are normal outcomes (e.g. name probing, banned users retrying the login):
+     * the exception doesn't fill its stack trace and errors without arguments share a cached template.
+     * The error, hence the HTTP body, is the same one built by {@link MagiavventureException#of}.
+     */
+    public static AuthorizationException expected(String key, Object... args) {
+        Error error = args.length == 0
+                ? TEMPLATES.computeIfAbsent(key, k -> Error.builder().key(k).args(NO_ARGS).build())
+                : Error.builder().key(key).args(args).build();
+        return new Expected(error);
+    }
+
+    private static final class Expected extends AuthorizationException {
+
+        private Expected(Error error) {
+            super(error);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
@@ -0,0 +1,27 @@
+package it.magiavventure.authorization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("it.magiavventure.authorization.Login")
+@Label("Login")
+@Category({"Magiavventure", "Authorization"})
+@Description("Login by id, from the user lookup to the jwt build")
+@StackTrace(false)
+public class LoginEvent extends Event {
+
+    @Label("Outcome")
+    @Description("success, the error key or the exception name")
+    private String outcome;
+
+    public void end(String outcome) {
+        if (!shouldCommit())
+            return;
+        this.outcome = outcome;
+        commit();
+    }
+}
@@ -0,0 +1,34 @@
+package it.magiavventure.authorization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("it.magiavventure.authorization.UserCacheLookup")
+@Label("User Cache Lookup")
+@Category({"Magiavventure", "Authorization", "Cache"})
+@Description("Lookup of a key in the layered user caches")
+@StackTrace(false)
+public class UserCacheLookupEvent extends Event {
+
+    @Label("Cache")
+    private String cache;
+    @Label("Tier")
+    @Description("local or remote")
+    private String tier;
+    @Label("Outcome")
+    @Description("hit or miss")
+    private String outcome;
+
+    public void end(String cache, String tier, String outcome) {
+        if (!shouldCommit())
+            return;
+        this.cache = cache;
+        this.tier = tier;
+        this.outcome = outcome;
+        commit();
+    }
+}
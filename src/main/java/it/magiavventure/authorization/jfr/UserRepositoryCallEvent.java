@@ -0,0 +1,56 @@
+package it.magiavventure.authorization.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.function.Supplier;
+
+@Name("it.magiavventure.authorization.UserRepositoryCall")
+@Label("User Repository Call")
+@Category({"Magiavventure", "Authorization", "Persistence"})
+@Description("Call to the Mongo user repositories")
+@StackTrace(false)
+public class UserRepositoryCallEvent extends Event {
+    private static final String SUCCESS = "success";
+
+    @Label("Repository")
+    private String repository;
+    @Label("Method")
+    private String method;
+    @Label("Outcome")
+    @Description("success or the exception name")
+    private String outcome;
+
+    public static <T> T record(String repository, String method, Supplier<T> call) {
+        UserRepositoryCallEvent event = new UserRepositoryCallEvent();
+        event.begin();
+        try {
+            T result = call.get();
+            event.end(repository, method, SUCCESS);
+            return result;
+        } catch (RuntimeException e) {
+            event.end(repository, method, e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    public static void record(String repository, String method, Runnable call) {
+        record(repository, method, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private void end(String repository, String method, String outcome) {
+        if (!shouldCommit())
+            return;
+        this.repository = repository;
+        this.method = method;
+        this.outcome = outcome;
+        commit();
+    }
+}
@@ -0,0 +1,68 @@
+package it.magiavventure.authorization.mapper;
+
+import it.magiavventure.jwt.service.OwnershipService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Authorities encoded as a bit mask, one bit for each of the {@link #AUTHORITIES} in their order: new authorities
+ * must be appended, since the bits are shared with the cached values and the signed tokens. Authorities outside
+ * the list can't be encoded, so the callers keep their names.
+ */
+public final class AuthorityMask {
+    public static final List<String> AUTHORITIES = List.of(OwnershipService.USER_AUTHORITY,
+            OwnershipService.ADMIN_AUTHORITY);
+    public static final int UNENCODABLE = -1;
+    private static final List<List<String>> NAMES = names();
+
+    private AuthorityMask() {
+    }
+
+    /**
+     * Mask of the authorities, or {@link #UNENCODABLE} when one of them is unknown.
+     */
+    public static int of(Collection<String> authorities) {
+        int mask = 0;
+        if (Objects.isNull(authorities))
+            return mask;
+        for (String authority : authorities) {
+            int bit = AUTHORITIES.indexOf(authority);
+            if (bit < 0)
+                return UNENCODABLE;
+            mask |= 1 << bit;
+        }
+        return mask;
+    }
+
+    /**
+     * Names of the authorities in the mask, shared between the callers and not modifiable.
+     */
+    public static List<String> names(int mask) {
+        if (mask < 0 || mask >= NAMES.size())
+            throw new IllegalArgumentException("Unknown authority mask " + mask);
+        return NAMES.get(mask);
+    }
+
+    /**
+     * Whether the mask holds at least one of the required authorities, as the roles of a jwt endpoint rule.
+     */
+    public static boolean anyOf(int mask, int required) {
+        return (mask & required) != 0;
+    }
+
+    private static List<List<String>> names() {
+        List<List<String>> names = new ArrayList<>();
+        for (int mask = 0; mask < 1 << AUTHORITIES.size(); mask++) {
+            List<String> authorities = new ArrayList<>();
+            for (int bit = 0; bit < AUTHORITIES.size(); bit++) {
+                if ((mask & 1 << bit) != 0)
+                    authorities.add(AUTHORITIES.get(bit));
+            }
+            names.add(List.copyOf(authorities));
+        }
+        return List.copyOf(names);
+    }
+}
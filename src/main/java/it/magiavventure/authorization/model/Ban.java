@@ -0,0 +1,15 @@
+package it.magiavventure.authorization.model;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Ban {
+    private UUID id;
+    private LocalDateTime banExpiration;
+}
@@ -0,0 +1,26 @@
+package it.magiavventure.authorization.model;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BanUsers {
+    @NotEmpty
+    @Size(max = UserIds.MAX_SIZE)
+    private List<@NotNull UUID> ids;
+    @Valid
+    @NotNull
+    private BanUser ban;
+}
@@ -17,4 +17,6 @@ public class LoginResponse {
     User user;
     @NotNull
     String token;
+    String signedToken;
+    String refreshToken;
 }
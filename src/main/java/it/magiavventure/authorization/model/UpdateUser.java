@@ -22,4 +22,5 @@ public class UpdateUser {
     @NotNull
     private String avatar;
     private List<Category> preferredCategories;
+    private Long version;
 }
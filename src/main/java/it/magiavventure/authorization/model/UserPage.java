@@ -0,0 +1,19 @@
+package it.magiavventure.authorization.model;
+
+import it.magiavventure.mongo.model.User;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPage implements Serializable {
+    private List<User> users;
+    private String next;
+}
@@ -1,35 +1,66 @@
 package it.magiavventure.authorization.operation;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import it.magiavventure.authorization.model.*;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
 import it.magiavventure.authorization.service.AuthorizationService;
+import it.magiavventure.authorization.service.IntrospectionService;
 import it.magiavventure.authorization.service.UserService;
+import it.magiavventure.authorization.token.TokenSigner;
 import it.magiavventure.jwt.service.JwtService;
 import it.magiavventure.mongo.model.User;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 
 @Slf4j
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/v1")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class AuthorizationOperation {
+    private static final int NEW_LINE = '\n';
 
     private final AuthorizationService authorizationService;
     private final UserService userService;
+    private final IntrospectionService introspectionService;
+    private final TokenSigner tokenSigner;
+    private final AuthorizationProperties authorizationProperties;
     private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
     
     @PostMapping("/loginById")
     public User loginById(@RequestBody @Valid Login login, HttpServletResponse response) {
-        LoginResponse loginResponse = authorizationService.loginById(login.getId());
-        response.setHeader(jwtService.getTokenHeader(), loginResponse.getToken());
-        return loginResponse.getUser();
+        return writeTokens(authorizationService.loginById(login.getId()), response);
+    }
+
+    @PostMapping("/refreshToken")
+    public User refreshToken(@RequestBody @Valid RefreshToken refreshToken, HttpServletResponse response) {
+        return writeTokens(authorizationService.refresh(refreshToken.getRefreshToken()), response);
+    }
+
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity
+                .ok()
+                .cacheControl(CacheControl.maxAge(tokenSigner.jwksMaxAge()).cachePublic())
+                .body(tokenSigner.jwks());
     }
 
     @PostMapping("/saveUser")
@@ -42,11 +73,38 @@ public class AuthorizationOperation {
     public List<User> findAllUser() {
         return userService.findAll();
     }
+
+    @GetMapping("/retrieveUsers/page")
+    public UserPage findUserPage(@RequestParam(name = "cursor", required = false) String cursor,
+                                 @RequestParam(name = "size", required = false) Integer size) {
+        return userService.findPage(cursor, size);
+    }
+
+    @PostMapping("/retrieveUsers/batch")
+    public List<User> findUsers(@RequestBody @Valid UserIds userIds) {
+        return userService.findByIds(userIds.getIds());
+    }
+
+    @GetMapping(value = "/retrieveUsers/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamAllUser() {
+        return outputStream -> userService.streamAll(user -> writeLine(outputStream, user));
+    }
+
     @GetMapping("/retrieveUser/{id}")
     public User findUser(@PathVariable(name = "id") UUID id) {
         return userService.findById(id);
     }
 
+    @PostMapping("/introspect")
+    public Introspection introspect(@RequestBody @Valid IntrospectToken introspectToken) {
+        return introspectionService.introspect(introspectToken.getToken());
+    }
+
+    @PostMapping("/introspect/batch")
+    public List<Introspection> introspectAll(@RequestBody @Valid IntrospectTokens introspectTokens) {
+        return introspectionService.introspectAll(introspectTokens.getTokens());
+    }
+
     @GetMapping("/checkUserName/{name}")
     public void checkName(@PathVariable(name = "name") String name) {
         userService.checkIfUserExists(name);
@@ -68,10 +126,44 @@ public class AuthorizationOperation {
         return userService.banUser(id, banUser);
     }
 
+    @PutMapping("/banUsers")
+    public List<Ban> banUsers(@RequestBody @Valid BanUsers banUsers) {
+        return userService.banUsers(banUsers);
+    }
+
+    @PutMapping("/unbanUsers")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void unbanUsers(@RequestBody @Valid UserIds userIds) {
+        userService.unbanUsers(userIds);
+    }
+
     @PutMapping("/elevateUser/{id}")
     public User elevateUser(@PathVariable(name = "id") UUID id) {
         return userService.giveAdminAuthorityToUser(id);
     }
 
+    @GetMapping("/retrieveBans")
+    public List<Ban> findActiveBans() {
+        return userService.findActiveBans();
+    }
+
+    private User writeTokens(LoginResponse loginResponse, HttpServletResponse response) {
+        response.setHeader(jwtService.getTokenHeader(), loginResponse.getToken());
+        if (Objects.nonNull(loginResponse.getSignedToken()))
+            response.setHeader(authorizationProperties.getSigning().getHeader(), loginResponse.getSignedToken());
+        if (Objects.nonNull(loginResponse.getRefreshToken()))
+            response.setHeader(authorizationProperties.getRefresh().getHeader(), loginResponse.getRefreshToken());
+        return loginResponse.getUser();
+    }
+
+    private void writeLine(OutputStream outputStream, User user) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(user));
+            outputStream.write(NEW_LINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 
 }
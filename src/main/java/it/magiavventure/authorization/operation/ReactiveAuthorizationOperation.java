@@ -0,0 +1,68 @@
+package it.magiavventure.authorization.operation;
+
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.model.CreateUser;
+import it.magiavventure.authorization.model.Login;
+import it.magiavventure.authorization.service.ReactiveAuthorizationService;
+import it.magiavventure.authorization.service.ReactiveUserService;
+import it.magiavventure.authorization.token.TokenSigner;
+import it.magiavventure.jwt.service.JwtService;
+import it.magiavventure.mongo.model.User;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Objects;
+
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/v1")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthorizationOperation {
+
+    private final ReactiveAuthorizationService reactiveAuthorizationService;
+    private final ReactiveUserService reactiveUserService;
+    private final JwtService jwtService;
+    private final TokenSigner tokenSigner;
+    private final AuthorizationProperties authorizationProperties;
+
+    @PostMapping("/loginById")
+    public Mono<User> loginById(@RequestBody @Valid Login login, ServerHttpResponse response) {
+        return reactiveAuthorizationService.loginById(login.getId())
+                .map(loginResponse -> {
+                    response.getHeaders().set(jwtService.getTokenHeader(), loginResponse.getToken());
+                    if (Objects.nonNull(loginResponse.getSignedToken()))
+                        response.getHeaders().set(authorizationProperties.getSigning().getHeader(),
+                                loginResponse.getSignedToken());
+                    return loginResponse.getUser();
+                });
+    }
+
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity
+                .ok()
+                .cacheControl(CacheControl.maxAge(tokenSigner.jwksMaxAge()).cachePublic())
+                .body(tokenSigner.jwks());
+    }
+
+    @PostMapping("/saveUser")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<User> createUser(@RequestBody @Valid CreateUser createUser) {
+        return reactiveUserService.createUser(createUser);
+    }
+
+    @GetMapping("/checkUserName/{name}")
+    public Mono<Void> checkName(@PathVariable(name = "name") String name) {
+        return reactiveUserService.checkIfUserExists(name);
+    }
+}
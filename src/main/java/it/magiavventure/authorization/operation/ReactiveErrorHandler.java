@@ -0,0 +1,56 @@
+package it.magiavventure.authorization.operation;
+
+import it.magiavventure.authorization.configuration.ReactiveErrorProperties;
+import it.magiavventure.common.error.MagiavventureException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the service errors of the reactive endpoints on the error messages configured for the servlet ones,
+ * so both stacks answer with the same codes and statuses. The body holds only the code and the message, it is
+ * not the error body of the starter: the reactive profile is limited to the benchmark of the public endpoints.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestControllerAdvice(assignableTypes = ReactiveAuthorizationOperation.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveErrorHandler {
+    private static final String CODE = "code";
+    private static final String MESSAGE = "message";
+    private static final String UNKNOWN_ERROR = "unknown-error";
+
+    private final ReactiveErrorProperties reactiveErrorProperties;
+    private final Map<String, Map<String, String>> bodiesWithoutArgs = new ConcurrentHashMap<>();
+
+    @ExceptionHandler(MagiavventureException.class)
+    public ResponseEntity<Map<String, String>> handleMagiavventureException(MagiavventureException exception) {
+        String key = exception.getError().getKey();
+        ReactiveErrorProperties.ErrorMessage errorMessage = reactiveErrorProperties.getServiceErrorsMessages().get(key);
+        if (Objects.isNull(errorMessage)) {
+            log.error("Missing error message for key '{}'", key, exception);
+            return ResponseEntity
+                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(CODE, UNKNOWN_ERROR, MESSAGE, key));
+        }
+        Object[] args = Objects.requireNonNullElse(exception.getError().getArgs(), new Object[0]);
+        Map<String, String> body = args.length == 0
+                ? bodiesWithoutArgs.computeIfAbsent(key, k -> body(errorMessage, args))
+                : body(errorMessage, args);
+        return ResponseEntity
+                .status(errorMessage.getStatus())
+                .body(body);
+    }
+
+    private static Map<String, String> body(ReactiveErrorProperties.ErrorMessage errorMessage, Object[] args) {
+        return Map.of(CODE, errorMessage.getCode(), MESSAGE, errorMessage.getMessage().formatted(args));
+    }
+}
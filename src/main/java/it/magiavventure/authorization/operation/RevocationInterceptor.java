@@ -0,0 +1,73 @@
+package it.magiavventure.authorization.operation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.jwt.service.JwtService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Rejects the requests carrying a token of a banned user. The token signature is already verified by the jwt
+ * filter, here only the payload is decoded to read the user id and check it against the {@link RevocationSet}.
+ */
+@Slf4j
+public class RevocationInterceptor implements HandlerInterceptor {
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final RevocationSet revocationSet;
+    private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+    private final String claim;
+    private final Counter rejectionCounter;
+
+    public RevocationInterceptor(RevocationSet revocationSet,
+                                 JwtService jwtService,
+                                 ObjectMapper objectMapper,
+                                 AuthorizationProperties authorizationProperties,
+                                 MeterRegistry meterRegistry) {
+        this.revocationSet = revocationSet;
+        this.jwtService = jwtService;
+        this.objectMapper = objectMapper;
+        this.claim = authorizationProperties.getRevocation().getClaim();
+        this.rejectionCounter = Counter.builder("authorization.revocation.rejections").register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        UUID id = userId(request.getHeader(jwtService.getTokenHeader()));
+        if (revocationSet.isRevoked(id)) {
+            rejectionCounter.increment();
+            throw AuthorizationException.expected(AuthorizationException.USER_BLOCKED);
+        }
+        return true;
+    }
+
+    private UUID userId(String token) {
+        if (Objects.isNull(token))
+            return null;
+        if (token.startsWith(BEARER_PREFIX))
+            token = token.substring(BEARER_PREFIX.length());
+        String[] parts = token.split("\\.");
+        if (parts.length < 2)
+            return null;
+        try {
+            JsonNode value = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1])).get(claim);
+            return Objects.isNull(value) || !value.isTextual() ? null : UUID.fromString(value.asText());
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Unable to read claim '{}' from token", claim, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package it.magiavventure.authorization.repository;
+
+import it.magiavventure.mongo.entity.EUser;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserQueryRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public Mono<EUser> findById(UUID id) {
+        return reactiveMongoTemplate.findById(id, EUser.class);
+    }
+
+    public Mono<Boolean> existsByName(String name) {
+        return reactiveMongoTemplate.exists(UserQueryRepository.nameQuery(name), EUser.class);
+    }
+
+    public Mono<EUser> insert(EUser eUser) {
+        return reactiveMongoTemplate.insert(eUser);
+    }
+}
@@ -0,0 +1,230 @@
+package it.magiavventure.authorization.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.magiavventure.authorization.jfr.UserRepositoryCallEvent;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.Category;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class UserQueryRepository {
+    public static final Collation NAME_COLLATION = Collation.of("en")
+            .strength(Collation.ComparisonLevel.secondary());
+    private static final String NAME = "name";
+    private static final String ID = "id";
+    private static final String BAN_EXPIRATION = "banExpiration";
+    private static final String AVATAR = "avatar";
+    private static final String PREFERRED_CATEGORIES = "preferredCategories";
+    private static final String AUTHORITIES = "authorities";
+    private static final String VERSION = "version";
+    private static final String LAST_MODIFIED_DATE = "lastModifiedDate";
+    private static final String NAME_INDEX = "name_ci_unique";
+    private static final String NAME_ORDER_INDEX = "name_id_order";
+    private static final Sort NAME_ORDER = Sort.by(Sort.Direction.ASC, NAME, ID);
+    private static final String INVOCATIONS_METRIC = "spring.data.repository.invocations";
+
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private volatile boolean nameIndexed;
+
+    public void ensureNameIndex() {
+        try {
+            mongoTemplate.indexOps(EUser.class).ensureIndex(new Index()
+                    .on(NAME, Sort.Direction.ASC)
+                    .unique()
+                    .named(NAME_INDEX)
+                    .collation(NAME_COLLATION));
+            nameIndexed = true;
+        } catch (RuntimeException e) {
+            log.error("Unable to ensure unique case insensitive index '{}' on user name, "
+                    + "name availability will be checked before every write", NAME_INDEX, e);
+        }
+        ensureNameOrderIndex();
+    }
+
+    /**
+     * Index of the pages and stream order: the collated unique index can't serve the queries without collation.
+     */
+    private void ensureNameOrderIndex() {
+        try {
+            mongoTemplate.indexOps(EUser.class).ensureIndex(new Index()
+                    .on(NAME, Sort.Direction.ASC)
+                    .on(ID, Sort.Direction.ASC)
+                    .named(NAME_ORDER_INDEX));
+        } catch (RuntimeException e) {
+            log.error("Unable to ensure index '{}' on user name and id, the users pages will be sorted in memory",
+                    NAME_ORDER_INDEX, e);
+        }
+    }
+
+    public boolean isNameIndexed() {
+        return nameIndexed;
+    }
+
+    public boolean existsByName(String name) {
+        return timed("existsByName", () -> mongoTemplate.exists(nameQuery(name), EUser.class));
+    }
+
+    public boolean existsByName(String name, UUID excludedId) {
+        return timed("existsByName", () -> mongoTemplate.exists(nameQuery(name)
+                .addCriteria(Criteria.where(ID).ne(excludedId)), EUser.class));
+    }
+
+    public boolean existsById(UUID id) {
+        return timed("existsById", () -> mongoTemplate.exists(Query.query(Criteria.where(ID).is(id)), EUser.class));
+    }
+
+    public static Query nameQuery(String name) {
+        return Query.query(Criteria.where(NAME).is(name)).collation(NAME_COLLATION);
+    }
+
+    public List<EUser> findPage(String afterName, UUID afterId, int limit) {
+        Query query = new Query().with(NAME_ORDER).limit(limit);
+        if (Objects.nonNull(afterName))
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where(NAME).gt(afterName),
+                    new Criteria().andOperator(Criteria.where(NAME).is(afterName), Criteria.where(ID).gt(afterId))));
+        return timed("findPage", () -> mongoTemplate.find(query, EUser.class));
+    }
+
+    public Stream<String> streamNames() {
+        Query query = new Query();
+        query.fields().include(NAME);
+        return mongoTemplate.stream(query, EUser.class).map(EUser::getName);
+    }
+
+    public Stream<EUser> streamBanned(LocalDateTime now) {
+        Query query = Query.query(Criteria.where(BAN_EXPIRATION).gt(now));
+        query.fields().include(ID, BAN_EXPIRATION);
+        return mongoTemplate.stream(query, EUser.class);
+    }
+
+    /**
+     * Removes the ban expiration of the user if it's already reached, returns null when there's nothing to clear.
+     */
+    public EUser clearExpiredBan(UUID id, LocalDateTime now) {
+        Query query = Query.query(Criteria.where(ID).is(id).and(BAN_EXPIRATION).lte(now));
+        return timed("clearExpiredBan", () -> mongoTemplate.findAndModify(query,
+                touched(new Update().unset(BAN_EXPIRATION)), FindAndModifyOptions.options().returnNew(true),
+                EUser.class));
+    }
+
+    /**
+     * Sets the profile fields, only if the user is still at the given version when one is given.
+     * Returns the updated user, or null when there's no match.
+     */
+    public EUser updateProfile(UUID id, Long version, String name, String avatar, List<Category> preferredCategories) {
+        Update update = new Update()
+                .set(NAME, name)
+                .set(AVATAR, avatar)
+                .set(PREFERRED_CATEGORIES, preferredCategories);
+        return timed("updateProfile", () -> mongoTemplate.findAndModify(versionQuery(id, version), touched(update),
+                FindAndModifyOptions.options().returnNew(true), EUser.class));
+    }
+
+    /**
+     * Sets the ban expiration, returns the updated user or null when it doesn't exist.
+     */
+    public EUser ban(UUID id, LocalDateTime banExpiration) {
+        return timed("ban", () -> mongoTemplate.findAndModify(versionQuery(id, null),
+                touched(new Update().set(BAN_EXPIRATION, banExpiration)), FindAndModifyOptions.options().returnNew(true),
+                EUser.class));
+    }
+
+    /**
+     * Sets the authorities, returns the updated user or null when it doesn't exist.
+     */
+    public EUser grantAuthorities(UUID id, List<String> authorities) {
+        return timed("grantAuthorities", () -> mongoTemplate.findAndModify(versionQuery(id, null),
+                touched(new Update().set(AUTHORITIES, authorities)), FindAndModifyOptions.options().returnNew(true),
+                EUser.class));
+    }
+
+    /**
+     * Bans the existing users among the given ones with a single update, returns the ids of the banned users.
+     */
+    public List<UUID> banAll(Collection<UUID> ids, LocalDateTime banExpiration) {
+        return updateAll("banAll", ids, new Update().set(BAN_EXPIRATION, banExpiration));
+    }
+
+    public List<UUID> unbanAll(Collection<UUID> ids) {
+        return updateAll("unbanAll", ids, new Update().unset(BAN_EXPIRATION));
+    }
+
+    public Stream<EUser> streamAll() {
+        return mongoTemplate.stream(new Query().with(NAME_ORDER), EUser.class);
+    }
+
+    private List<UUID> updateAll(String method, Collection<UUID> ids, Update update) {
+        Query query = Query.query(Criteria.where(ID).in(ids));
+        query.fields().include(ID);
+        return timed(method, () -> {
+            List<UUID> found = mongoTemplate.find(query, EUser.class)
+                    .stream()
+                    .map(EUser::getId)
+                    .toList();
+            if (!found.isEmpty())
+                mongoTemplate.updateMulti(Query.query(Criteria.where(ID).in(found)), touched(update), EUser.class);
+            return found;
+        });
+    }
+
+    private static Query versionQuery(UUID id, Long version) {
+        Query query = Query.query(Criteria.where(ID).is(id));
+        if (Objects.nonNull(version))
+            query.addCriteria(Criteria.where(VERSION).is(version));
+        return query;
+    }
+
+    /**
+     * Keeps version and audit date in line with the full document saves of the repository.
+     */
+    private static Update touched(Update update) {
+        return update.inc(VERSION, 1).currentDate(LAST_MODIFIED_DATE);
+    }
+
+    /**
+     * Records the call with the same metric and tags Spring Data uses for the repository interfaces
+     * and as a flight recorder event.
+     */
+    private <T> T timed(String method, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String state = "SUCCESS";
+        String exception = "None";
+        try {
+            return UserRepositoryCallEvent.record(UserQueryRepository.class.getSimpleName(), method, call);
+        } catch (RuntimeException e) {
+            state = "ERROR";
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(INVOCATIONS_METRIC)
+                    .tag("repository", UserQueryRepository.class.getSimpleName())
+                    .tag("method", method)
+                    .tag("state", state)
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+}
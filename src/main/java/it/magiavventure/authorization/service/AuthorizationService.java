@@ -1,8 +1,13 @@
 package it.magiavventure.authorization.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.cache.RevocationSet;
 import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.authorization.jfr.LoginEvent;
 import it.magiavventure.authorization.mapper.UserMapper;
 import it.magiavventure.authorization.model.LoginResponse;
+import it.magiavventure.authorization.token.RefreshTokenStore;
+import it.magiavventure.authorization.token.TokenSigner;
 import it.magiavventure.common.error.MagiavventureException;
 import it.magiavventure.jwt.service.JwtService;
 import it.magiavventure.mongo.entity.EUser;
@@ -19,30 +24,117 @@ import java.util.UUID;
 @Service
 @RequiredArgsConstructor
 public class AuthorizationService {
+    static final String JWT_BUILD_METRIC = "authorization.jwt.build";
+    static final String LOGIN_REJECTIONS_METRIC = "authorization.login.rejections";
+    private static final String LOGIN_SUCCESS = "success";
 
     private final JwtService jwtService;
     private final UserService userService;
+    private final RevocationSet revocationSet;
+    private final MeterRegistry meterRegistry;
+    private final TokenSigner tokenSigner;
+    private final RefreshTokenStore refreshTokenStore;
     private final UserMapper userMapper;
 
     public LoginResponse loginById(UUID id) {
         log.debug("Execute login by id for '{}'", id);
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        try {
+            LoginResponse loginResponse = login(id);
+            event.end(LOGIN_SUCCESS);
+            return loginResponse;
+        } catch (MagiavventureException e) {
+            event.end(e.getError().getKey());
+            throw e;
+        } catch (RuntimeException e) {
+            event.end(e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    /**
+     * Rotates the refresh token and builds new tokens for its user without reading the users collection: the
+     * cached user is checked like the login does and mapped, since the view cache is loaded from the repository,
+     * an uncached user is checked with the revocation set only and its tokens are built from the snapshot of the
+     * session.
+     */
+    public LoginResponse refresh(String refreshToken) {
+        RefreshTokenStore.Session session = refreshTokenStore.rotate(refreshToken);
+        UUID id = session.getUserId();
+        log.debug("Execute token refresh for '{}'", id);
+        EUser eUser;
+        User user;
+        try {
+            validateUser(id);
+            eUser = userService.findCachedEntityById(id);
+            if (Objects.nonNull(eUser)) {
+                validateUser(eUser);
+                user = userMapper.map(eUser);
+            } else if (Objects.nonNull(session.getUser())) {
+                user = session.getUser();
+                eUser = EUser
+                        .builder()
+                        .id(id)
+                        .name(user.getName())
+                        .authorities(session.getAuthorities())
+                        .build();
+            } else {
+                eUser = userService.findEntityById(id);
+                validateUser(eUser);
+                user = userMapper.map(eUser);
+            }
+        } catch (MagiavventureException e) {
+            refreshTokenStore.revoke(session);
+            throw e;
+        }
+        return loginResponse(user, eUser, session.getRefreshToken());
+    }
+
+    private LoginResponse login(UUID id) {
+        EUser eUser = validatedUser(id);
+        User user = userService.findViewById(id);
+        return loginResponse(user, eUser,
+                refreshTokenStore.isEnabled() ? refreshTokenStore.issue(user, eUser) : null);
+    }
+
+    /**
+     * The ban of the user entity is the one to trust, the revocation set only rejects the known bans without
+     * reading the user.
+     */
+    private EUser validatedUser(UUID id) {
+        validateUser(id);
         EUser eUser = userService.findEntityById(id);
         validateUser(eUser);
-        User user = userMapper.map(eUser);
-        String token = jwtService.buildJwt(user);
+        return eUser;
+    }
+
+    private LoginResponse loginResponse(User user, EUser eUser, String refreshToken) {
+        String token = meterRegistry.timer(JWT_BUILD_METRIC).record(() -> jwtService.buildJwt(user));
         return LoginResponse
                 .builder()
                 .user(user)
                 .token(token)
+                .signedToken(tokenSigner.isEnabled() ? tokenSigner.sign(eUser) : null)
+                .refreshToken(refreshToken)
                 .build();
     }
 
+    private void validateUser(UUID id) {
+        log.debug("Execute ban lookup after login for '{}'", id);
+        if (revocationSet.isRevoked(id)) {
+            meterRegistry.counter(LOGIN_REJECTIONS_METRIC, "reason", "banned").increment();
+            throw AuthorizationException.expected(AuthorizationException.USER_BLOCKED);
+        }
+    }
+
     private void validateUser(EUser eUser) {
         log.debug("Execute user validation after login for '{}'", eUser);
         LocalDateTime banExpiration = eUser.getBanExpiration();
         if(Objects.nonNull(banExpiration) && banExpiration.isAfter(LocalDateTime.now())) {
             userService.evictUserCache(eUser);
-            throw MagiavventureException.of(AuthorizationException.USER_BLOCKED);
+            meterRegistry.counter(LOGIN_REJECTIONS_METRIC, "reason", "banned").increment();
+            throw AuthorizationException.expected(AuthorizationException.USER_BLOCKED);
         }
     }
 }
@@ -0,0 +1,63 @@
+package it.magiavventure.authorization.service;
+
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.model.Introspection;
+import it.magiavventure.authorization.token.TokenVerifier;
+import it.magiavventure.mongo.entity.EUser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Tells other services whether the user of a token is still active and which authorities it has now, reading
+ * the ban and the authorities from the user cache, with the {@link RevocationSet} rejecting the known bans.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IntrospectionService {
+
+    private final TokenVerifier tokenVerifier;
+    private final UserService userService;
+    private final RevocationSet revocationSet;
+
+    public Introspection introspect(String token) {
+        return introspectAll(List.of(token)).get(0);
+    }
+
+    public List<Introspection> introspectAll(List<String> tokens) {
+        log.debug("Execute introspection of '{}' tokens", tokens.size());
+        List<UUID> ids = tokens
+                .stream()
+                .map(tokenVerifier::verifiedUserId)
+                .toList();
+        Map<UUID, EUser> eUsers = userService.findEntitiesByIds(ids
+                .stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList());
+        return ids
+                .stream()
+                .map(id -> introspection(id, Objects.isNull(id) ? null : eUsers.get(id)))
+                .toList();
+    }
+
+    private Introspection introspection(UUID id, EUser eUser) {
+        if (Objects.isNull(eUser))
+            return Introspection.builder().active(false).build();
+        boolean banned = revocationSet.isRevoked(id)
+                || Objects.nonNull(eUser.getBanExpiration()) && eUser.getBanExpiration().isAfter(LocalDateTime.now());
+        return Introspection
+                .builder()
+                .active(!banned)
+                .banned(banned)
+                .authorities(eUser.getAuthorities())
+                .build();
+    }
+}
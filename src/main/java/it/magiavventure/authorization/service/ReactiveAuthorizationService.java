@@ -0,0 +1,78 @@
+package it.magiavventure.authorization.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.authorization.model.LoginResponse;
+import it.magiavventure.authorization.token.TokenSigner;
+import it.magiavventure.jwt.service.JwtService;
+import it.magiavventure.mongo.entity.EUser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthorizationService {
+
+    private final JwtService jwtService;
+    private final ReactiveUserService reactiveUserService;
+    private final RevocationSet revocationSet;
+    private final MeterRegistry meterRegistry;
+    private final TokenSigner tokenSigner;
+
+    public Mono<LoginResponse> loginById(UUID id) {
+        log.debug("Execute reactive login by id for '{}'", id);
+        Mono<Void> validation = validateUser(id)
+                .then(Mono.defer(() -> reactiveUserService.findEntityById(id).flatMap(this::validateUser)));
+        return validation
+                .then(Mono.defer(() -> reactiveUserService.findViewById(id)))
+                .map(user -> LoginResponse
+                        .builder()
+                        .user(user)
+                        .token(meterRegistry.timer(AuthorizationService.JWT_BUILD_METRIC)
+                                .record(() -> jwtService.buildJwt(user)))
+                        .build())
+                .flatMap(this::sign);
+    }
+
+    private Mono<LoginResponse> sign(LoginResponse loginResponse) {
+        if (!tokenSigner.isEnabled())
+            return Mono.just(loginResponse);
+        return reactiveUserService.findEntityById(loginResponse.getUser().getId())
+                .map(eUser -> {
+                    loginResponse.setSignedToken(tokenSigner.sign(eUser));
+                    return loginResponse;
+                });
+    }
+
+    private Mono<Void> validateUser(UUID id) {
+        log.debug("Execute ban lookup after reactive login for '{}'", id);
+        if (revocationSet.isRevoked(id))
+            return Mono.fromRunnable(() -> meterRegistry
+                            .counter(AuthorizationService.LOGIN_REJECTIONS_METRIC, "reason", "banned")
+                            .increment())
+                    .then(Mono.error(AuthorizationException.expected(AuthorizationException.USER_BLOCKED)));
+        return Mono.empty();
+    }
+
+    private Mono<Void> validateUser(EUser eUser) {
+        log.debug("Execute user validation after reactive login for '{}'", eUser);
+        LocalDateTime banExpiration = eUser.getBanExpiration();
+        if(Objects.nonNull(banExpiration) && banExpiration.isAfter(LocalDateTime.now()))
+            return reactiveUserService.evictUserCache(eUser)
+                    .doOnSuccess(ignored -> meterRegistry
+                            .counter(AuthorizationService.LOGIN_REJECTIONS_METRIC, "reason", "banned")
+                            .increment())
+                    .then(Mono.error(AuthorizationException.expected(AuthorizationException.USER_BLOCKED)));
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,135 @@
+package it.magiavventure.authorization.service;
+
+import it.magiavventure.authorization.cache.UserListCache;
+import it.magiavventure.authorization.cache.UserNameFilter;
+import it.magiavventure.authorization.cache.UserPageGeneration;
+import it.magiavventure.authorization.cache.UserTombstones;
+import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.authorization.model.CreateUser;
+import it.magiavventure.authorization.repository.ReactiveUserQueryRepository;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.jwt.service.OwnershipService;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking counterpart of {@link UserService} for the public endpoints, sharing its caches and keys.
+ * Cache reads and loads are asynchronous, cache evictions and updates that can only be done blocking
+ * run on the bounded elastic scheduler.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserService {
+    private static final String USER_CACHE = "user";
+    private static final String USER_VIEW_CACHE = "user_view";
+
+    private final ReactiveUserQueryRepository reactiveUserQueryRepository;
+    private final UserQueryRepository userQueryRepository;
+    private final UserMapper userMapper;
+    private final CacheManager cacheManager;
+    private final UserListCache userListCache;
+    private final UserNameFilter userNameFilter;
+    private final UserTombstones userTombstones;
+    private final UserPageGeneration userPageGeneration;
+
+    public Mono<User> createUser(CreateUser createUser) {
+        log.debug("Execute reactive create user for '{}'", createUser);
+        EUser userToSave = EUser
+                .builder()
+                .id(UUID.randomUUID())
+                .name(createUser.getName())
+                .avatar(createUser.getAvatar())
+                .preferredCategories(createUser.getPreferredCategories())
+                .authorities(List.of(OwnershipService.USER_AUTHORITY))
+                .build();
+        Mono<Void> check = userQueryRepository.isNameIndexed() ? Mono.empty() : checkIfUserExists(createUser.getName());
+        return check
+                .then(Mono.defer(() -> reactiveUserQueryRepository.insert(userToSave)))
+                .onErrorMap(DuplicateKeyException.class,
+                        e -> AuthorizationException.expected(AuthorizationException.USER_EXISTS, userToSave.getName()))
+                .map(userMapper::map)
+                .flatMap(user -> offload(() -> {
+                    userTombstones.remove(user.getId());
+                    userListCache.insert(user);
+                    userNameFilter.add(user.getName());
+                    userPageGeneration.next();
+                }).thenReturn(user));
+    }
+
+    public Mono<Void> checkIfUserExists(String name) {
+        log.debug("Execute reactive check if user name exists for name '{}'", name);
+        if (!userNameFilter.mightContain(name))
+            return Mono.empty();
+        return reactiveUserQueryRepository.existsByName(name)
+                .doOnNext(userNameFilter::recordLookup)
+                .flatMap(exists -> exists
+                        ? Mono.error(AuthorizationException.expected(AuthorizationException.USER_EXISTS, name))
+                        : Mono.empty());
+    }
+
+    public Mono<EUser> findEntityById(UUID id) {
+        log.debug("Execute reactive user find entity by id '{}'", id);
+        return cached(USER_CACHE, id, () -> loadEntity(id));
+    }
+
+    public Mono<User> findViewById(UUID id) {
+        log.debug("Execute reactive user find view by id '{}'", id);
+        return cached(USER_VIEW_CACHE, id, () -> loadEntity(id).map(userMapper::map));
+    }
+
+    public Mono<Void> evictUserCache(EUser eUser) {
+        return offload(() -> {
+            withCache(USER_CACHE, cache -> cache.evict(eUser.getId()));
+            withCache(USER_VIEW_CACHE, cache -> cache.evict(eUser.getId()));
+            log.debug("Evicted user cache for key '{}'", eUser.getId());
+        });
+    }
+
+    private Mono<EUser> loadEntity(UUID id) {
+        return Mono.fromCallable(() -> userTombstones.contains(id))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(missing -> missing
+                        ? Mono.<EUser>empty()
+                        : reactiveUserQueryRepository.findById(id)
+                                .switchIfEmpty(offload(() -> userTombstones.add(id)).then(Mono.<EUser>empty())))
+                .switchIfEmpty(Mono.error(() ->
+                        AuthorizationException.expected(AuthorizationException.USER_NOT_FOUND, id.toString())));
+    }
+
+    private <T> Mono<T> cached(String cacheName, Object key, Supplier<Mono<T>> loader) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (Objects.isNull(cache))
+            return loader.get();
+        return Mono.fromFuture(() -> cache.retrieve(key, () -> loader.get().toFuture()));
+    }
+
+    private void withCache(String cacheName, Consumer<Cache> action) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (Objects.nonNull(cache))
+            action.accept(cache);
+    }
+
+    private static Mono<Void> offload(Runnable runnable) {
+        return Mono.fromRunnable(runnable)
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+}
@@ -1,10 +1,25 @@
 package it.magiavventure.authorization.service;
 
+import it.magiavventure.authorization.cache.BanExpiredEvent;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.cache.UserBatchCache;
+import it.magiavventure.authorization.cache.UserListCache;
+import it.magiavventure.authorization.cache.UserNameFilter;
+import it.magiavventure.authorization.cache.UserPageGeneration;
+import it.magiavventure.authorization.cache.UserTombstones;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
 import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.authorization.jfr.UserRepositoryCallEvent;
 import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.authorization.model.Ban;
 import it.magiavventure.authorization.model.BanUser;
+import it.magiavventure.authorization.model.BanUsers;
 import it.magiavventure.authorization.model.CreateUser;
 import it.magiavventure.authorization.model.UpdateUser;
+import it.magiavventure.authorization.model.UserIds;
+import it.magiavventure.authorization.model.UserPage;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.authorization.token.RefreshTokenStore;
 import it.magiavventure.common.error.MagiavventureException;
 import it.magiavventure.jwt.service.OwnershipService;
 import it.magiavventure.mongo.entity.EUser;
@@ -18,29 +33,48 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.context.annotation.Scope;
 import org.springframework.context.annotation.ScopedProxyMode;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 @Scope(proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class UserService {
+    private static final String CURSOR_SEPARATOR = ":";
+    private static final String USER_REPOSITORY = "UserRepository";
     private final UserService self;
     private final UserRepository userRepository;
     private final UserMapper userMapper;
     private final OwnershipService ownershipService;
+    private final UserListCache userListCache;
+    private final UserNameFilter userNameFilter;
+    private final UserQueryRepository userQueryRepository;
+    private final AuthorizationProperties authorizationProperties;
+    private final RevocationSet revocationSet;
+    private final UserBatchCache userBatchCache;
+    private final UserPageGeneration userPageGeneration;
+    private final UserTombstones userTombstones;
+    private final RefreshTokenStore refreshTokenStore;
 
-    @CacheEvict(value = "users", key = "'all'")
     public User createUser(CreateUser createUser) {
         log.debug("Execute create user for '{}'", createUser);
-        checkIfUserExists(createUser.getName());
+        if (!userQueryRepository.isNameIndexed())
+            checkIfUserExists(createUser.getName());
         EUser userToSave = EUser
                 .builder()
                 .id(UUID.randomUUID())
@@ -49,41 +83,101 @@ public class UserService {
                 .preferredCategories(createUser.getPreferredCategories())
                 .authorities(List.of(OwnershipService.USER_AUTHORITY))
                 .build();
-        return saveAndMapUser(userToSave);
+        User user = saveAndMapUser(userToSave);
+        userTombstones.remove(user.getId());
+        userListCache.insert(user);
+        userNameFilter.add(user.getName());
+        userPageGeneration.next();
+        return user;
     }
 
     @Caching(
             evict = {
-                    @CacheEvict(value = "user_entity", key = "#p0"),
-                    @CacheEvict(value = "users", key = "'all'")
+                    @CacheEvict(value = "user", key = "#p0"),
+                    @CacheEvict(value = "user_view", key = "#p0")
             }
     )
     public User banUser(UUID id, BanUser banUser) {
         log.debug("Execute ban user for id '{}' with duration '{}'", id, banUser);
-        EUser userToBan = self.findEntityById(id);
-        String duration = banUser.getDuration()+banUser.getUnit().getValue();
-        LocalDateTime banExpiration = LocalDateTime.now().plus(DurationStyle.detectAndParse(duration));
-        userToBan.setBanExpiration(banExpiration);
-        return saveAndMapUser(userToBan);
+        LocalDateTime banExpiration = banExpiration(banUser);
+        User user = mapAndReplaceUser(requireUpdated(userQueryRepository.ban(id, banExpiration), id, null));
+        revocationSet.revoke(id, banExpiration);
+        userPageGeneration.next();
+        return user;
+    }
+
+    public List<Ban> banUsers(BanUsers banUsers) {
+        log.debug("Execute ban users '{}'", banUsers);
+        LocalDateTime banExpiration = banExpiration(banUsers.getBan());
+        List<UUID> banned = userQueryRepository.banAll(banUsers.getIds(), banExpiration);
+        userBatchCache.evictUsers(banned);
+        revocationSet.revokeAll(banned, banExpiration);
+        return banned
+                .stream()
+                .map(id -> Ban
+                        .builder()
+                        .id(id)
+                        .banExpiration(banExpiration)
+                        .build())
+                .toList();
+    }
+
+    public void unbanUsers(UserIds userIds) {
+        log.debug("Execute unban users '{}'", userIds);
+        List<UUID> unbanned = userQueryRepository.unbanAll(userIds.getIds());
+        userBatchCache.evictUsers(unbanned);
+        revocationSet.liftAll(unbanned);
     }
 
     @Caching(
             evict = {
                     @CacheEvict(value = "user", key = "#p0"),
-                    @CacheEvict(value = "users", key = "'all'")
+                    @CacheEvict(value = "user_view", key = "#p0")
             }
     )
     public User giveAdminAuthorityToUser(UUID id) {
         log.debug("Execute give admin authority to user with id '{}'", id);
-        EUser eUser = self.findEntityById(id);
-        eUser.setAuthorities(List.of(OwnershipService.USER_AUTHORITY, OwnershipService.ADMIN_AUTHORITY));
-        return saveAndMapUser(eUser);
+        EUser eUser = userQueryRepository.grantAuthorities(id,
+                List.of(OwnershipService.USER_AUTHORITY, OwnershipService.ADMIN_AUTHORITY));
+        User user = mapAndReplaceUser(requireUpdated(eUser, id, null));
+        userPageGeneration.next();
+        return user;
     }
 
+    @EventListener
     @Caching(
             evict = {
                     @CacheEvict(value = "user", key = "#p0.id"),
-                    @CacheEvict(value = "users", key = "'all'")
+                    @CacheEvict(value = "user_view", key = "#p0.id")
+            }
+    )
+    public void clearExpiredBan(BanExpiredEvent banExpiredEvent) {
+        log.debug("Execute clear expired ban for user with id '{}'", banExpiredEvent.getId());
+        EUser eUser = userQueryRepository.clearExpiredBan(banExpiredEvent.getId(), LocalDateTime.now());
+        if (Objects.isNull(eUser))
+            return;
+        userListCache.replace(userMapper.map(eUser));
+        userPageGeneration.next();
+    }
+
+    public List<Ban> findActiveBans() {
+        log.debug("Execute find active bans");
+        return revocationSet.activeBans()
+                .entrySet()
+                .stream()
+                .map(entry -> Ban
+                        .builder()
+                        .id(entry.getKey())
+                        .banExpiration(entry.getValue())
+                        .build())
+                .sorted(Comparator.comparing(Ban::getBanExpiration))
+                .toList();
+    }
+
+    @Caching(
+            evict = {
+                    @CacheEvict(value = "user", key = "#p0.id"),
+                    @CacheEvict(value = "user_view", key = "#p0.id")
             }
     )
     public void evictUserCache(EUser eUser) {
@@ -93,76 +187,257 @@ public class UserService {
     @Caching(
             evict = {
                     @CacheEvict(value = "user", key = "#p0.id"),
-                    @CacheEvict(value = "users", key = "'all'")
+                    @CacheEvict(value = "user_view", key = "#p0.id")
             }
     )
     public User updateUser(UpdateUser updateUser) {
         log.debug("Execute update user for '{}'", updateUser);
-        validateUser(updateUser.getId());
-        EUser userToUpdate = self.findEntityById(updateUser.getId());
-
-        if(!userToUpdate.getName().equalsIgnoreCase(updateUser.getName()))
-            checkIfUserExists(updateUser.getName());
+        UUID id = updateUser.getId();
+        validateUser(id);
+        if (!userQueryRepository.isNameIndexed())
+            checkIfOtherUserExists(updateUser.getName(), id);
 
-        userToUpdate.setName(updateUser.getName());
-        userToUpdate.setAvatar(updateUser.getAvatar());
-        userToUpdate.setPreferredCategories(updateUser.getPreferredCategories());
+        // renames are told apart by the cached user, a missing one counts as a rename
+        EUser cached = userBatchCache.getUsers(List.of(id)).get(id);
+        EUser updated;
+        try {
+            updated = userQueryRepository.updateProfile(id, updateUser.getVersion(), updateUser.getName(),
+                    updateUser.getAvatar(), updateUser.getPreferredCategories());
+        } catch (DuplicateKeyException e) {
+            throw AuthorizationException.expected(AuthorizationException.USER_EXISTS, updateUser.getName());
+        }
+        EUser userUpdated = requireUpdated(updated, id, updateUser.getVersion());
+        boolean renamed = Objects.isNull(cached) || !cached.getName().equalsIgnoreCase(userUpdated.getName());
 
-        return saveAndMapUser(userToUpdate);
+        User user = mapAndReplaceUser(userUpdated);
+        if (renamed) {
+            userNameFilter.add(user.getName());
+            userNameFilter.markStale();
+        }
+        userPageGeneration.next();
+        return user;
     }
 
-    @Cacheable(value = "users", key = "'all'")
+    @Cacheable(value = "users", key = "'all'", sync = true)
     public List<User> findAll() {
         log.debug("Execute find all users");
         var sort = Sort.by(Sort.Direction.ASC, "name");
-        return userRepository.findAll(sort)
+        return UserRepositoryCallEvent.record(USER_REPOSITORY, "findAll", () -> userRepository.findAll(sort))
+                .stream()
+                .map(userMapper::map)
+                .toList();
+    }
+
+    public UserPage findPage(String cursor, Integer size) {
+        AuthorizationProperties.Users users = authorizationProperties.getUsers();
+        int limit = Objects.isNull(size) ? users.getDefaultPageSize() : Math.min(Math.max(size, 1), users.getMaxPageSize());
+        return self.findPageByCursor(cursor, limit, userPageGeneration.current());
+    }
+
+    /**
+     * Page of the given generation of the users, cached until a change moves the users to the next one.
+     */
+    @Cacheable(value = "users_page", key = "#p2 + ':' + (#p0 ?: 'first') + ':' + #p1", sync = true)
+    public UserPage findPageByCursor(String cursor, int limit, long generation) {
+        log.debug("Execute find users page after cursor '{}' with limit '{}'", cursor, limit);
+        String afterName = null;
+        UUID afterId = null;
+        if (Objects.nonNull(cursor)) {
+            String[] position = decodeCursor(cursor);
+            afterId = UUID.fromString(position[0]);
+            afterName = position[1];
+        }
+        List<EUser> eUsers = userQueryRepository.findPage(afterName, afterId, limit + 1);
+        List<User> users = eUsers
                 .stream()
+                .limit(limit)
                 .map(userMapper::map)
                 .toList();
+        String next = null;
+        if (eUsers.size() > limit) {
+            User last = users.get(limit - 1);
+            next = encodeCursor(last.getId(), last.getName());
+        }
+        return UserPage
+                .builder()
+                .users(users)
+                .next(next)
+                .build();
+    }
+
+    public void streamAll(Consumer<User> consumer) {
+        log.debug("Execute stream all users");
+        try (Stream<EUser> eUsers = userQueryRepository.streamAll()) {
+            eUsers.map(userMapper::map).forEach(consumer);
+        }
     }
 
     public User findById(UUID id) {
         log.debug("Execute user find by id '{}'", id);
         validateUser(id);
-        return userMapper.map(self.findEntityById(id));
+        return self.findViewById(id);
     }
 
-    @CacheEvict(value = "user", key = "#p0")
+    /**
+     * Users with the given ids in the requested order, skipping the unknown ones. The cached users are read
+     * with a single multi-get and the missing ones loaded with a single query.
+     */
+    public List<User> findByIds(List<UUID> ids) {
+        log.debug("Execute user find by ids '{}'", ids);
+        List<UUID> distinctIds = ids.stream().distinct().toList();
+        Map<UUID, EUser> eUsers = findEntitiesByIds(distinctIds);
+        return distinctIds
+                .stream()
+                .map(eUsers::get)
+                .filter(Objects::nonNull)
+                .map(userMapper::map)
+                .toList();
+    }
+
+    /**
+     * Entities of the given distinct ids found in the user cache, loading the misses in a single query.
+     */
+    public Map<UUID, EUser> findEntitiesByIds(List<UUID> ids) {
+        if (ids.isEmpty())
+            return Map.of();
+        Map<UUID, EUser> eUsers = new HashMap<>(userBatchCache.getUsers(ids));
+        List<UUID> misses = ids
+                .stream()
+                .filter(id -> !eUsers.containsKey(id))
+                .toList();
+        if (!misses.isEmpty()) {
+            List<EUser> loaded = UserRepositoryCallEvent.record(USER_REPOSITORY, "findAllById",
+                    () -> userRepository.findAllById(misses));
+            userBatchCache.putUsers(loaded);
+            loaded.forEach(eUser -> eUsers.put(eUser.getId(), eUser));
+        }
+        return eUsers;
+    }
+
+    /**
+     * Entity found in the user cache, without loading it on a miss.
+     */
+    public EUser findCachedEntityById(UUID id) {
+        return userBatchCache.getUsers(List.of(id)).get(id);
+    }
+
+    /**
+     * Mapped user shared by every reader of the cache, it must not be modified. It's loaded from the repository
+     * and not from the user cache, so a reload of the view can't map a cached entity older than the view.
+     */
+    @Cacheable(value = "user_view", key = "#p0", sync = true)
+    public User findViewById(UUID id) {
+        log.debug("Execute user find view by id '{}'", id);
+        return userMapper.map(loadEntity(id));
+    }
+
+    @Caching(
+            evict = {
+                    @CacheEvict(value = "user", key = "#p0"),
+                    @CacheEvict(value = "user_view", key = "#p0")
+            }
+    )
     public void deleteById(UUID id) {
         log.debug("Execute user delete by id '{}'", id);
         validateUser(id);
         self.findEntityById(id);
-        userRepository.deleteById(id);
+        UserRepositoryCallEvent.record(USER_REPOSITORY, "deleteById", () -> userRepository.deleteById(id));
+        userTombstones.add(id);
+        userListCache.remove(id);
+        userNameFilter.markStale();
+        refreshTokenStore.revokeAll(id);
+        userPageGeneration.next();
     }
 
-    @Cacheable(value="user", key = "#p0")
+    @Cacheable(value="user", key = "#p0", sync = true)
     public EUser findEntityById(UUID id) {
         log.debug("Execute user find entity by id '{}'", id);
-        return userRepository.findById(id)
-                .orElseThrow(() -> MagiavventureException.of(AuthorizationException.USER_NOT_FOUND, id.toString()));
+        return loadEntity(id);
     }
 
     public void checkIfUserExists(String name) {
         log.debug("Execute check if user name exists for name '{}'", name);
-        Example<EUser> example = Example.of(EUser
-                .builder()
-                .name(name)
-                .build(), ExampleMatcher.matchingAny().withMatcher("name",
-                ExampleMatcher.GenericPropertyMatchers.ignoreCase()));
+        if(!userNameFilter.mightContain(name))
+            return;
+        boolean exists = userQueryRepository.existsByName(name);
+        userNameFilter.recordLookup(exists);
+        if(exists)
+            throw AuthorizationException.expected(AuthorizationException.USER_EXISTS, name);
 
-        if(userRepository.exists(example))
-            throw MagiavventureException.of(AuthorizationException.USER_EXISTS, name);
+    }
 
+    private EUser loadEntity(UUID id) {
+        if (userTombstones.contains(id))
+            throw AuthorizationException.expected(AuthorizationException.USER_NOT_FOUND, id.toString());
+        return UserRepositoryCallEvent.record(USER_REPOSITORY, "findById", () -> userRepository.findById(id))
+                .orElseThrow(() -> {
+                    userTombstones.add(id);
+                    return AuthorizationException.expected(AuthorizationException.USER_NOT_FOUND, id.toString());
+                });
     }
 
     private User saveAndMapUser(EUser userToSave) {
-        EUser savedUser = userRepository.save(userToSave);
-        return userMapper.map(savedUser);
+        try {
+            EUser savedUser = UserRepositoryCallEvent.record(USER_REPOSITORY, "save",
+                    () -> userRepository.save(userToSave));
+            return userMapper.map(savedUser);
+        } catch (DuplicateKeyException e) {
+            throw AuthorizationException.expected(AuthorizationException.USER_EXISTS, userToSave.getName());
+        }
+    }
+
+    private User mapAndReplaceUser(EUser eUser) {
+        User user = userMapper.map(eUser);
+        userListCache.replace(user);
+        return user;
+    }
+
+    /**
+     * Tells apart a missing user from a concurrent change when a targeted update matched nothing.
+     */
+    private EUser requireUpdated(EUser eUser, UUID id, Long version) {
+        if (Objects.nonNull(eUser))
+            return eUser;
+        if (Objects.nonNull(version) && userQueryRepository.existsById(id))
+            throw MagiavventureException.of(AuthorizationException.USER_CONFLICT, id.toString());
+        throw AuthorizationException.expected(AuthorizationException.USER_NOT_FOUND, id.toString());
+    }
+
+    private void checkIfOtherUserExists(String name, UUID id) {
+        if(!userNameFilter.mightContain(name))
+            return;
+        boolean exists = userQueryRepository.existsByName(name, id);
+        userNameFilter.recordLookup(exists);
+        if(exists)
+            throw AuthorizationException.expected(AuthorizationException.USER_EXISTS, name);
+    }
+
+    private static LocalDateTime banExpiration(BanUser banUser) {
+        String duration = banUser.getDuration()+banUser.getUnit().getValue();
+        return LocalDateTime.now().plus(DurationStyle.detectAndParse(duration));
     }
 
     private void validateUser(UUID id) {
         ownershipService.validateOwnership(id);
     }
 
+    private static String encodeCursor(UUID id, String name) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((id + CURSOR_SEPARATOR + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(CURSOR_SEPARATOR, 2);
+            UUID.fromString(position[0]);
+            if (position.length != 2)
+                throw new IllegalArgumentException("Missing name in cursor");
+            return position;
+        } catch (IllegalArgumentException e) {
+            throw MagiavventureException.of(AuthorizationException.INVALID_CURSOR, cursor);
+        }
+    }
+
 
 }
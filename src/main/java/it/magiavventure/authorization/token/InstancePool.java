@@ -0,0 +1,41 @@
+package it.magiavventure.authorization.token;
+
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of initialized instances that aren't thread safe, e.g. signatures and macs, shared by every thread
+ * so that it works with virtual threads too. A borrower takes an idle instance or creates a new one when none is
+ * idle, the instances released to a full pool are dropped. Instances that failed must not be released.
+ */
+final class InstancePool<T> {
+    static final int DEFAULT_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private final BlockingQueue<T> idle;
+    private final Factory<T> factory;
+
+    InstancePool(int size, Factory<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.factory = factory;
+    }
+
+    T borrow() throws GeneralSecurityException {
+        T instance = idle.poll();
+        return Objects.nonNull(instance) ? instance : factory.create();
+    }
+
+    void release(T instance) {
+        idle.offer(instance);
+    }
+
+    int idle() {
+        return idle.size();
+    }
+
+    @FunctionalInterface
+    interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+}
@@ -0,0 +1,248 @@
+package it.magiavventure.authorization.token;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.error.AuthorizationException;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Refresh tokens kept in Redis, one hash per session (family) holding its user, the user snapshot to build the new
+ * tokens when the user isn't cached and the digest of the only valid refresh token. Every refresh rotates the token
+ * with a single script call:
+ * presenting an already used token is a reuse, so the whole family is revoked. Families rejected by this node are
+ * remembered in a local cache to answer the retries without reaching Redis. The families of a user are kept in a
+ * sorted set scored by their expiration, pruned of the expired ones on every issue and of the revoked ones when
+ * they're revoked.
+ */
+@Slf4j
+@Component
+public class RefreshTokenStore {
+    private static final String METRIC = "authorization.refresh";
+    private static final String SEPARATOR = ".";
+    private static final String FAMILY = "family:";
+    private static final String USER_FAMILIES = "user:";
+    private static final String USER = "user";
+    private static final String DIGEST = "digest";
+    private static final String VIEW = "view";
+    private static final String AUTHORITIES = "authorities";
+    private static final String AUTHORITY_SEPARATOR = ",";
+    private static final String UNKNOWN = "-1";
+    private static final String REUSED = "0";
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROTATE = RedisScript.of("""
+            local digest = redis.call('HGET', KEYS[1], 'digest')
+            if not digest then return {'-1'} end
+            if digest ~= ARGV[1] then
+                local user = redis.call('HGET', KEYS[1], 'user')
+                redis.call('DEL', KEYS[1])
+                if user then return {'0', user} end
+                return {'0'}
+            end
+            redis.call('HSET', KEYS[1], 'digest', ARGV[2])
+            return {'1', redis.call('HGET', KEYS[1], 'user'), redis.call('HGET', KEYS[1], 'view'),
+                    redis.call('HGET', KEYS[1], 'authorities')}
+            """, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final AuthorizationProperties.Refresh properties;
+    private final Cache<UUID, Boolean> rejectedFamilies;
+    private final SecureRandom random = new SecureRandom();
+
+    public RefreshTokenStore(StringRedisTemplate stringRedisTemplate,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             AuthorizationProperties authorizationProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.properties = authorizationProperties.getRefresh();
+        this.rejectedFamilies = Caffeine
+                .newBuilder()
+                .maximumSize(properties.getRejected().getMaximumSize())
+                .expireAfterWrite(properties.getRejected().getTtl())
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Opens a new family for the user and returns its first refresh token.
+     */
+    public String issue(User user, EUser eUser) {
+        UUID family = UUID.randomUUID();
+        String secret = secret();
+        String familyKey = familyKey(family);
+        String userFamiliesKey = userFamiliesKey(eUser.getId());
+        long now = System.currentTimeMillis();
+        Map<String, String> values = Map.of(
+                USER, eUser.getId().toString(),
+                DIGEST, digest(secret),
+                VIEW, write(user),
+                AUTHORITIES, String.join(AUTHORITY_SEPARATOR,
+                        Objects.requireNonNullElse(eUser.getAuthorities(), List.of())));
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                redis.opsForHash().putAll(familyKey, values);
+                redis.expire(familyKey, properties.getTtl());
+                redis.opsForZSet().removeRangeByScore(userFamiliesKey, Double.NEGATIVE_INFINITY, now);
+                redis.opsForZSet().add(userFamiliesKey, family.toString(), now + properties.getTtl().toMillis());
+                redis.expire(userFamiliesKey, properties.getTtl());
+                return null;
+            }
+        });
+        meterRegistry.counter(METRIC, "result", "issued").increment();
+        return family + SEPARATOR + secret;
+    }
+
+    /**
+     * Consumes the refresh token and returns the session with the rotated one, rejecting unknown, expired and
+     * reused tokens. The script only touches the family key, the family of a reused token is removed from the
+     * families of its user afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    public Session rotate(String refreshToken) {
+        if (!properties.isEnabled())
+            throw AuthorizationException.expected(AuthorizationException.INVALID_REFRESH_TOKEN);
+        int separator = Objects.isNull(refreshToken) ? -1 : refreshToken.indexOf(SEPARATOR);
+        UUID family = separator > 0 ? family(refreshToken.substring(0, separator)) : null;
+        if (Objects.isNull(family) || Objects.nonNull(rejectedFamilies.getIfPresent(family)))
+            throw rejected(family, "rejected");
+        String secret = secret();
+        List<String> result = (List<String>) stringRedisTemplate.execute(ROTATE, List.of(familyKey(family)),
+                digest(refreshToken.substring(separator + 1)), digest(secret));
+        String outcome = Objects.isNull(result) || result.isEmpty() ? UNKNOWN : result.get(0);
+        if (UNKNOWN.equals(outcome))
+            throw rejected(family, "unknown");
+        if (REUSED.equals(outcome)) {
+            log.warn("Reuse of a refresh token of family '{}', the family is revoked", family);
+            if (result.size() > 1)
+                stringRedisTemplate.opsForZSet().remove(userFamiliesKey(UUID.fromString(result.get(1))),
+                        family.toString());
+            throw rejected(family, "reused");
+        }
+        meterRegistry.counter(METRIC, "result", "rotated").increment();
+        String authorities = result.get(3);
+        return new Session(family, UUID.fromString(result.get(1)), read(result.get(2)),
+                Objects.isNull(authorities) || authorities.isEmpty() ? List.of()
+                        : Arrays.asList(authorities.split(AUTHORITY_SEPARATOR)),
+                family + SEPARATOR + secret);
+    }
+
+    public void revoke(Session session) {
+        rejectedFamilies.put(session.getFamily(), Boolean.TRUE);
+        stringRedisTemplate.delete(familyKey(session.getFamily()));
+        stringRedisTemplate.opsForZSet().remove(userFamiliesKey(session.getUserId()), session.getFamily().toString());
+    }
+
+    /**
+     * Revokes every family of the user, e.g. when the user is deleted.
+     */
+    public void revokeAll(UUID userId) {
+        if (!properties.isEnabled())
+            return;
+        String userFamiliesKey = userFamiliesKey(userId);
+        Set<String> families = stringRedisTemplate.opsForZSet().range(userFamiliesKey, 0, -1);
+        if (Objects.nonNull(families) && !families.isEmpty()) {
+            families.forEach(family -> rejectedFamilies.put(UUID.fromString(family), Boolean.TRUE));
+            stringRedisTemplate.delete(families.stream().map(family -> properties.getKeyPrefix() + FAMILY + family)
+                    .toList());
+        }
+        stringRedisTemplate.delete(userFamiliesKey);
+    }
+
+    private AuthorizationException rejected(UUID family, String result) {
+        if (Objects.nonNull(family))
+            rejectedFamilies.put(family, Boolean.TRUE);
+        meterRegistry.counter(METRIC, "result", result).increment();
+        return AuthorizationException.expected(AuthorizationException.INVALID_REFRESH_TOKEN);
+    }
+
+    private String familyKey(UUID family) {
+        return properties.getKeyPrefix() + FAMILY + family;
+    }
+
+    private String userFamiliesKey(UUID userId) {
+        return properties.getKeyPrefix() + USER_FAMILIES + userId;
+    }
+
+    private String secret() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private String write(User user) {
+        try {
+            return objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to write user snapshot", e);
+        }
+    }
+
+    private User read(String view) {
+        if (Objects.isNull(view))
+            return null;
+        try {
+            return objectMapper.readValue(view, User.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to read user snapshot", e);
+        }
+    }
+
+    private static UUID family(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String digest(String secret) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256")
+                    .digest(secret.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Value
+    public static class Session {
+        UUID family;
+        UUID userId;
+        User user;
+        List<String> authorities;
+        String refreshToken;
+    }
+}
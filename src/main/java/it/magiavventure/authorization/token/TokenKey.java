@@ -0,0 +1,64 @@
+package it.magiavventure.authorization.token;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * EC key of the token signatures. Retired keys have no private key, they are kept to verify the tokens they
+ * signed until those expire.
+ */
+@Getter
+final class TokenKey {
+    private final String id;
+    private final String algorithm;
+    private final String signatureAlgorithm;
+    private final ECPublicKey publicKey;
+    private final PrivateKey privateKey;
+    private final Map<String, String> jwk;
+
+    TokenKey(String id, ECPublicKey publicKey, PrivateKey privateKey) {
+        int fieldSize = publicKey.getParams().getCurve().getField().getFieldSize();
+        String curve = switch (fieldSize) {
+            case 256 -> "P-256";
+            case 384 -> "P-384";
+            case 521 -> "P-521";
+            default -> throw new IllegalArgumentException("Unsupported curve of key '" + id + "'");
+        };
+        int hashSize = fieldSize == 521 ? 512 : fieldSize;
+        this.id = id;
+        this.algorithm = "ES" + hashSize;
+        this.signatureAlgorithm = "SHA" + hashSize + "withECDSAinP1363Format";
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        int size = (fieldSize + 7) / 8;
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("kty", "EC");
+        values.put("crv", curve);
+        values.put("x", coordinate(publicKey.getW().getAffineX(), size));
+        values.put("y", coordinate(publicKey.getW().getAffineY(), size));
+        values.put("kid", id);
+        values.put("use", "sig");
+        values.put("alg", algorithm);
+        this.jwk = Collections.unmodifiableMap(values);
+    }
+
+    boolean canSign() {
+        return Objects.nonNull(privateKey);
+    }
+
+    private static String coordinate(BigInteger value, int size) {
+        byte[] bytes = value.toByteArray();
+        byte[] padded = new byte[size];
+        int length = Math.min(bytes.length, size);
+        System.arraycopy(bytes, bytes.length - length, padded, size - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(padded);
+    }
+}
@@ -0,0 +1,187 @@
+package it.magiavventure.authorization.token;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.mapper.AuthorityMask;
+import it.magiavventure.mongo.entity.EUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signs the tokens with the active EC key, so that other services can verify them offline with the public keys
+ * published as a JWKS. Keys are loaded once on startup and the initialized signature instances are pooled.
+ * Rotation: a new key is added and made active, the previous one stays published with its public key only until
+ * the tokens it signed expire. With the authority mask the authorities are written as an {@link AuthorityMask} in the
+ * {@code auth} claim, unless one of them can't be encoded.
+ */
+@Slf4j
+@Component
+public class TokenSigner {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final String PEM_BOUNDARY = "-----[^-]+-----";
+    private static final String SIGN = "sign:";
+    private static final String VERIFY = "verify:";
+
+    private final ObjectMapper objectMapper;
+    private final AuthorizationProperties.Signing properties;
+    private final String claim;
+    private final Map<String, TokenKey> keys;
+    private final TokenKey activeKey;
+    private final String encodedHeader;
+    private final Map<String, Object> jwks;
+    private final Map<String, InstancePool<Signature>> signatures = new ConcurrentHashMap<>();
+
+    public TokenSigner(ObjectMapper objectMapper,
+                       AuthorizationProperties authorizationProperties,
+                       ResourceLoader resourceLoader) {
+        this.objectMapper = objectMapper;
+        this.properties = authorizationProperties.getSigning();
+        this.claim = authorizationProperties.getRevocation().getClaim();
+        Map<String, TokenKey> loaded = new LinkedHashMap<>();
+        if (properties.isEnabled())
+            properties.getKeys().forEach((id, key) -> loaded.put(id, load(id, key, resourceLoader)));
+        this.keys = Collections.unmodifiableMap(loaded);
+        this.activeKey = properties.isEnabled() ? activeKey(properties.getActiveKey(), keys) : null;
+        this.encodedHeader = Objects.nonNull(activeKey)
+                ? encode(Map.of("alg", activeKey.getAlgorithm(), "typ", "JWT", "kid", activeKey.getId()))
+                : null;
+        this.jwks = Map.of("keys", keys.values().stream().map(TokenKey::getJwk).toList());
+    }
+
+    public boolean isEnabled() {
+        return Objects.nonNull(activeKey);
+    }
+
+    public Map<String, Object> jwks() {
+        return jwks;
+    }
+
+    public Duration jwksMaxAge() {
+        return properties.getJwksMaxAge();
+    }
+
+    public String sign(EUser eUser) {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put(claim, eUser.getId().toString());
+        claims.put("name", eUser.getName());
+        List<String> authorities = Objects.requireNonNullElse(eUser.getAuthorities(), List.of());
+        int authorityMask = properties.isAuthorityMask() ? AuthorityMask.of(authorities) : AuthorityMask.UNENCODABLE;
+        if (authorityMask != AuthorityMask.UNENCODABLE)
+            claims.put("auth", authorityMask);
+        else
+            claims.put("authorities", authorities);
+        claims.put("iss", properties.getIssuer());
+        claims.put("iat", now);
+        claims.put("exp", now + properties.getTtl().toSeconds());
+        String signingInput = encodedHeader + "." + encode(claims);
+        InstancePool<Signature> pool = signatures(SIGN + activeKey.getId(), activeKey, true);
+        try {
+            Signature signer = pool.borrow();
+            signer.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            String token = signingInput + "." + ENCODER.encodeToString(signer.sign());
+            pool.release(signer);
+            return token;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign token with key '" + activeKey.getId() + "'", e);
+        }
+    }
+
+    /**
+     * Verifies the signature of a token with the published key of the given id and algorithm.
+     */
+    boolean verify(String keyId, String algorithm, String signingInput, byte[] signature) {
+        TokenKey key = Objects.isNull(keyId) ? null : keys.get(keyId);
+        if (Objects.isNull(key) || !key.getAlgorithm().equals(algorithm))
+            return false;
+        InstancePool<Signature> pool = signatures(VERIFY + key.getId(), key, false);
+        try {
+            Signature verifier = pool.borrow();
+            verifier.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            boolean valid = verifier.verify(signature);
+            pool.release(verifier);
+            return valid;
+        } catch (GeneralSecurityException e) {
+            log.debug("Unable to verify token signature with key '{}'", keyId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Pool of the signature instances of the key, initialized once: after every sign or verify they're reset to the
+     * initialized state.
+     */
+    private InstancePool<Signature> signatures(String name, TokenKey key, boolean sign) {
+        return signatures.computeIfAbsent(name, ignored -> new InstancePool<>(InstancePool.DEFAULT_SIZE, () -> {
+            Signature signature = Signature.getInstance(key.getSignatureAlgorithm());
+            if (sign)
+                signature.initSign(key.getPrivateKey());
+            else
+                signature.initVerify(key.getPublicKey());
+            return signature;
+        }));
+    }
+
+    private String encode(Map<String, Object> value) {
+        try {
+            return ENCODER.encodeToString(objectMapper.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to write token part", e);
+        }
+    }
+
+    private static TokenKey activeKey(String id, Map<String, TokenKey> keys) {
+        TokenKey key = Objects.isNull(id) ? null : keys.get(id);
+        if (Objects.isNull(key) || !key.canSign())
+            throw new IllegalStateException("Active signing key '" + id + "' is missing or has no private key");
+        return key;
+    }
+
+    private static TokenKey load(String id, AuthorizationProperties.SigningKey key, ResourceLoader resourceLoader) {
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("EC");
+            PublicKey publicKey = keyFactory.generatePublic(
+                    new X509EncodedKeySpec(pem(resourceLoader.getResource(key.getPublicKey()))));
+            PrivateKey privateKey = Objects.nonNull(key.getPrivateKey())
+                    ? keyFactory.generatePrivate(
+                            new PKCS8EncodedKeySpec(pem(resourceLoader.getResource(key.getPrivateKey()))))
+                    : null;
+            log.info("Loaded token key '{}'{}", id, Objects.nonNull(privateKey) ? "" : " to verify only");
+            return new TokenKey(id, (ECPublicKey) publicKey, privateKey);
+        } catch (GeneralSecurityException | ClassCastException e) {
+            throw new IllegalStateException("Invalid EC token key '" + id + "'", e);
+        }
+    }
+
+    private static byte[] pem(Resource resource) {
+        try {
+            String content = resource.getContentAsString(StandardCharsets.US_ASCII);
+            return Base64.getMimeDecoder().decode(content.replaceAll(PEM_BOUNDARY, ""));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read token key " + resource, e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package it.magiavventure.authorization.token;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Verifies the tokens signed with the shared secret of the jwt library, or with a key of the {@link TokenSigner},
+ * outside of the jwt filter, e.g. the tokens sent by other services to be introspected, and reads the user id
+ * claim of the valid ones.
+ */
+@Slf4j
+@Component
+public class TokenVerifier {
+    private static final Map<String, String> ALGORITHMS = Map.of(
+            "HS256", "HmacSHA256",
+            "HS384", "HmacSHA384",
+            "HS512", "HmacSHA512");
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String ALGORITHM = "alg";
+    private static final String KEY_ID = "kid";
+    private static final String EC_PREFIX = "ES";
+    private static final String EXPIRATION = "exp";
+    private static final String NOT_BEFORE = "nbf";
+
+    private final ObjectMapper objectMapper;
+    private final TokenSigner tokenSigner;
+    private final byte[] secret;
+    private final String claim;
+    private final Map<String, InstancePool<Mac>> macs = new HashMap<>();
+
+    public TokenVerifier(ObjectMapper objectMapper,
+                         TokenSigner tokenSigner,
+                         AuthorizationProperties authorizationProperties,
+                         @Value("${magiavventure.lib.jwt.secret}") String secret) {
+        this.objectMapper = objectMapper;
+        this.tokenSigner = tokenSigner;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.claim = authorizationProperties.getRevocation().getClaim();
+        ALGORITHMS.forEach((algorithm, macAlgorithm) -> macs.put(algorithm,
+                new InstancePool<>(InstancePool.DEFAULT_SIZE, () -> mac(macAlgorithm))));
+    }
+
+    /**
+     * Returns the user id of a token with a valid signature, not expired, otherwise null.
+     */
+    public UUID verifiedUserId(String token) {
+        if (Objects.isNull(token))
+            return null;
+        if (token.startsWith(BEARER_PREFIX))
+            token = token.substring(BEARER_PREFIX.length());
+        String[] parts = token.split("\\.");
+        if (parts.length != 3)
+            return null;
+        try {
+            JsonNode header = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[0]));
+            String algorithm = header.path(ALGORITHM).asText();
+            String signingInput = parts[0] + "." + parts[1];
+            byte[] signature = Base64.getUrlDecoder().decode(parts[2]);
+            boolean valid = algorithm.startsWith(EC_PREFIX)
+                    ? tokenSigner.verify(header.path(KEY_ID).asText(null), algorithm, signingInput, signature)
+                    : verifyMac(algorithm, signingInput, signature);
+            if (!valid)
+                return null;
+            JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            long now = System.currentTimeMillis() / 1000;
+            if (claims.path(EXPIRATION).isNumber() && claims.get(EXPIRATION).asLong() <= now)
+                return null;
+            if (claims.path(NOT_BEFORE).isNumber() && claims.get(NOT_BEFORE).asLong() > now)
+                return null;
+            JsonNode value = claims.get(claim);
+            return Objects.isNull(value) || !value.isTextual() ? null : UUID.fromString(value.asText());
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Unable to verify token", e);
+            return null;
+        }
+    }
+
+    private boolean verifyMac(String algorithm, String signingInput, byte[] signature) {
+        InstancePool<Mac> pool = macs.get(algorithm);
+        if (Objects.isNull(pool))
+            return false;
+        try {
+            Mac mac = pool.borrow();
+            boolean valid = MessageDigest.isEqual(mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII)),
+                    signature);
+            pool.release(mac);
+            return valid;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to create mac " + algorithm, e);
+        }
+    }
+
+    /**
+     * Mac initialized with the secret, after every doFinal it's reset to the initialized state.
+     */
+    private Mac mac(String macAlgorithm) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(macAlgorithm);
+        mac.init(new SecretKeySpec(secret, macAlgorithm));
+        return mac;
+    }
+}
@@ -0,0 +1,47 @@
+package it.magiavventure.authorization.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Bloom filter tests")
+class BloomFilterTest {
+
+    @Test
+    @DisplayName("Inserted values are always found")
+    void put_mightContain_noFalseNegatives() {
+        BloomFilter bloomFilter = new BloomFilter(1_000, 0.01);
+        for (int i = 0; i < 1_000; i++)
+            bloomFilter.put("name-" + i);
+
+        for (int i = 0; i < 1_000; i++)
+            Assertions.assertTrue(bloomFilter.mightContain("name-" + i));
+        Assertions.assertEquals(1_000, bloomFilter.insertions());
+    }
+
+    @Test
+    @DisplayName("False positive rate stays close to the requested one")
+    void mightContain_falsePositiveRate() {
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++)
+            bloomFilter.put("name-" + i);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (bloomFilter.mightContain("other-" + i))
+                falsePositives++;
+        }
+
+        Assertions.assertTrue(falsePositives < 300, "false positives " + falsePositives);
+        Assertions.assertTrue(bloomFilter.expectedFpp() < 0.03);
+    }
+
+    @Test
+    @DisplayName("Empty filter contains nothing")
+    void mightContain_empty() {
+        BloomFilter bloomFilter = new BloomFilter(100, 0.01);
+
+        Assertions.assertFalse(bloomFilter.mightContain("name"));
+        Assertions.assertEquals(0.0, bloomFilter.expectedFpp());
+    }
+}
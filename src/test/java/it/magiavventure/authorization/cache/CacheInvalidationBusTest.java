@@ -0,0 +1,83 @@
+package it.magiavventure.authorization.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Cache invalidation bus tests")
+class CacheInvalidationBusTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private LayeredCache layeredCache;
+    @Captor
+    private ArgumentCaptor<String> messageArgumentCaptor;
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @BeforeEach
+    void setUp() {
+        cacheInvalidationBus = new CacheInvalidationBus(stringRedisTemplate, "channel");
+    }
+
+    @Test
+    @DisplayName("Publish invalidation on channel")
+    void publish_ok() {
+        cacheInvalidationBus.publish("user", "key");
+
+        Mockito.verify(stringRedisTemplate).convertAndSend(Mockito.eq("channel"), messageArgumentCaptor.capture());
+
+        Assertions.assertTrue(messageArgumentCaptor.getValue().endsWith("|user|key"));
+    }
+
+    @Test
+    @DisplayName("Own messages are ignored")
+    void onMessage_ownMessage_ignored() {
+        Mockito.when(layeredCache.getName()).thenReturn("user");
+        cacheInvalidationBus.register(layeredCache);
+        cacheInvalidationBus.publish("user", "key");
+        Mockito.verify(stringRedisTemplate).convertAndSend(Mockito.eq("channel"), messageArgumentCaptor.capture());
+
+        cacheInvalidationBus.onMessage(message(messageArgumentCaptor.getValue()), null);
+
+        Mockito.verify(layeredCache, Mockito.never()).evictLocal(Mockito.anyString());
+    }
+
+    @Test
+    @DisplayName("Messages from other nodes evict local key")
+    void onMessage_otherNode_evictLocal() {
+        Mockito.when(layeredCache.getName()).thenReturn("user");
+        cacheInvalidationBus.register(layeredCache);
+
+        cacheInvalidationBus.onMessage(message("other-node|user|key"), null);
+
+        Mockito.verify(layeredCache).evictLocal("key");
+    }
+
+    @Test
+    @DisplayName("Messages from other nodes without key clear local cache")
+    void onMessage_otherNode_clearLocal() {
+        Mockito.when(layeredCache.getName()).thenReturn("users");
+        cacheInvalidationBus.register(layeredCache);
+
+        cacheInvalidationBus.onMessage(message("other-node|users|*"), null);
+
+        Mockito.verify(layeredCache).clearLocal();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("channel".getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
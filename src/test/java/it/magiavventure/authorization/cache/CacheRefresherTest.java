@@ -0,0 +1,129 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@DisplayName("Cache refresher tests")
+class CacheRefresherTest {
+
+    private CacheRefreshExecutor executor;
+    private SimpleMeterRegistry meterRegistry;
+    private CacheRefresher cacheRefresher;
+
+    @BeforeEach
+    void setUp() {
+        executor = new CacheRefreshExecutor(1, 1);
+        meterRegistry = new SimpleMeterRegistry();
+        cacheRefresher = new CacheRefresher("user", executor, Duration.ofMinutes(10), Duration.ofMinutes(1),
+                meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    @DisplayName("Entry is due only inside the refresh window")
+    void isDue_ok() {
+        long now = System.currentTimeMillis();
+
+        Assertions.assertFalse(cacheRefresher.isDue(new CachedValue("value", now)));
+        Assertions.assertTrue(cacheRefresher.isDue(new CachedValue("value", now - Duration.ofMinutes(9).toMillis())));
+        Assertions.assertFalse(cacheRefresher.isDue(new CachedValue("value", now - Duration.ofMinutes(11).toMillis())));
+        Assertions.assertFalse(cacheRefresher.isDue(CachedValue.of("value")));
+    }
+
+    @Test
+    @DisplayName("Successful and failed refreshes are counted")
+    void submit_countsResults() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+
+        cacheRefresher.submit(done::countDown);
+        Assertions.assertTrue(awaitSubmit(() -> {
+            done.countDown();
+            throw new IllegalStateException("failure");
+        }));
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        awaitCount("failure", 1);
+        Assertions.assertEquals(1, count("success"));
+    }
+
+    @Test
+    @DisplayName("Refreshes rejected by the bounded executor are counted")
+    void submit_rejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        Assertions.assertTrue(cacheRefresher.submit(blocking));
+        Assertions.assertTrue(cacheRefresher.submit(blocking));
+        Assertions.assertFalse(cacheRefresher.submit(blocking));
+        release.countDown();
+
+        Assertions.assertEquals(1, count("rejected"));
+    }
+
+    @Test
+    @DisplayName("Refreshes on virtual threads are bounded by pool size and queue capacity")
+    void submit_virtualThreads_rejected() {
+        CacheRefreshExecutor virtualExecutor = new CacheRefreshExecutor(1, 1, true);
+        CacheRefresher virtualRefresher = new CacheRefresher("user", virtualExecutor, Duration.ofMinutes(10),
+                Duration.ofMinutes(1), meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        try {
+            Assertions.assertTrue(virtualRefresher.submit(blocking));
+            Assertions.assertTrue(virtualRefresher.submit(blocking));
+            Assertions.assertFalse(virtualRefresher.submit(blocking));
+            Assertions.assertEquals(1, count("rejected"));
+        } finally {
+            release.countDown();
+            virtualExecutor.destroy();
+        }
+    }
+
+    private boolean awaitSubmit(Runnable refresh) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (cacheRefresher.submit(refresh))
+                return true;
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private void awaitCount(String result, double expected) throws InterruptedException {
+        for (int i = 0; i < 100 && count(result) < expected; i++)
+            Thread.sleep(10);
+        Assertions.assertEquals(expected, count(result));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("authorization.cache.refresh")
+                .tag("cache", "user")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+}
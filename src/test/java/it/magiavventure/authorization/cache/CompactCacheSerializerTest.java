@@ -0,0 +1,168 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.authorization.model.UserPage;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.Category;
+import it.magiavventure.mongo.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+@DisplayName("Compact cache serializer tests")
+class CompactCacheSerializerTest {
+
+    private final CompactCacheSerializer serializer =
+            new CompactCacheSerializer(CompactCacheSerializerTest.class.getClassLoader());
+    private final JdkSerializationRedisSerializer jdkSerializer =
+            new JdkSerializationRedisSerializer(CompactCacheSerializerTest.class.getClassLoader());
+
+    @Test
+    @DisplayName("Serialize and deserialize a cached user entity")
+    void eUser_roundTrip() {
+        EUser user = eUser();
+        CachedValue cached = new CachedValue(user, 42L);
+
+        CachedValue deserialized = (CachedValue) serializer.deserialize(serializer.serialize(cached));
+
+        Assertions.assertNotNull(deserialized);
+        Assertions.assertEquals(42L, deserialized.getWrittenAt());
+        Assertions.assertEquals(user, deserialized.getValue());
+    }
+
+    @Test
+    @DisplayName("Serialize and deserialize a cached users list and users page")
+    void users_roundTrip() {
+        List<User> users = users(3);
+        UserPage userPage = UserPage.builder().users(users).next("next").build();
+
+        CachedValue deserializedUsers = (CachedValue) serializer
+                .deserialize(serializer.serialize(new CachedValue(users, 1L)));
+        CachedValue deserializedPage = (CachedValue) serializer
+                .deserialize(serializer.serialize(new CachedValue(userPage, 1L)));
+
+        Assertions.assertNotNull(deserializedUsers);
+        Assertions.assertNotNull(deserializedPage);
+        Assertions.assertEquals(users, deserializedUsers.getValue());
+        Assertions.assertEquals(userPage, deserializedPage.getValue());
+    }
+
+    @Test
+    @DisplayName("Values without a compact type and null values are kept")
+    void otherTypes_roundTrip() {
+        CachedValue string = (CachedValue) serializer.deserialize(serializer.serialize(new CachedValue("value", 1L)));
+        CachedValue empty = (CachedValue) serializer.deserialize(serializer.serialize(new CachedValue(null, 1L)));
+
+        Assertions.assertNotNull(string);
+        Assertions.assertNotNull(empty);
+        Assertions.assertEquals("value", string.getValue());
+        Assertions.assertNull(empty.getValue());
+    }
+
+    @Test
+    @DisplayName("Values written by the jdk serializer are still read")
+    void jdkFormat_fallback() {
+        EUser user = eUser();
+
+        Object deserialized = serializer.deserialize(jdkSerializer.serialize(user));
+
+        Assertions.assertEquals(user, deserialized);
+    }
+
+    @Test
+    @DisplayName("Values written by an unknown codec version are skipped")
+    void unknownVersion_skipped() {
+        byte[] bytes = serializer.serialize(new CachedValue(eUser(), 1L));
+        bytes[1] = CompactCacheSerializer.VERSION + 1;
+
+        Assertions.assertNull(serializer.deserialize(bytes));
+    }
+
+    @Test
+    @DisplayName("Compact format is smaller than the jdk one")
+    void compactFormat_smaller() {
+        List<User> users = users(100);
+
+        Assertions.assertTrue(serializer.serialize(new CachedValue(users, 1L)).length
+                < jdkSerializer.serialize(new CachedValue(users, 1L)).length);
+        Assertions.assertTrue(serializer.serialize(new CachedValue(eUser(), 1L)).length
+                < jdkSerializer.serialize(new CachedValue(eUser(), 1L)).length);
+    }
+
+    @Test
+    @DisplayName("Authorities written as a mask are smaller and read by every serializer")
+    void authorityMask_roundTrip() {
+        CompactCacheSerializer maskSerializer =
+                new CompactCacheSerializer(CompactCacheSerializerTest.class.getClassLoader(), true);
+        EUser user = eUser(List.of("user", "admin"));
+
+        byte[] masked = maskSerializer.serialize(new CachedValue(user, 1L));
+        byte[] named = serializer.serialize(new CachedValue(user, 1L));
+
+        Assertions.assertTrue(masked.length < named.length);
+        Assertions.assertEquals(user, ((CachedValue) serializer.deserialize(masked)).getValue());
+        Assertions.assertEquals(user, ((CachedValue) maskSerializer.deserialize(masked)).getValue());
+        Assertions.assertEquals(user, ((CachedValue) maskSerializer.deserialize(named)).getValue());
+    }
+
+    @Test
+    @DisplayName("Authorities that can't be encoded as a mask are kept as names")
+    void authorityMask_unknownAuthority() {
+        CompactCacheSerializer maskSerializer =
+                new CompactCacheSerializer(CompactCacheSerializerTest.class.getClassLoader(), true);
+        EUser user = eUser(List.of("user", "editor"));
+
+        CachedValue deserialized = (CachedValue) serializer.deserialize(maskSerializer
+                .serialize(new CachedValue(user, 1L)));
+
+        Assertions.assertEquals(user, deserialized.getValue());
+    }
+
+    private static EUser eUser() {
+        return eUser(List.of("user"));
+    }
+
+    private static EUser eUser(List<String> authorities) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        return EUser
+                .builder()
+                .id(UUID.randomUUID())
+                .name("name")
+                .avatar("avatar")
+                .preferredCategories(List.of(category("fantasy"), category("horror")))
+                .authorities(authorities)
+                .banExpiration(now)
+                .createdDate(now)
+                .lastModifiedDate(now)
+                .version(1L)
+                .build();
+    }
+
+    private static List<User> users(int size) {
+        Category category = category("fantasy");
+        return IntStream.range(0, size)
+                .mapToObj(i -> User
+                        .builder()
+                        .id(UUID.randomUUID())
+                        .name("name" + i)
+                        .avatar("avatar")
+                        .preferredCategories(List.of(category))
+                        .build())
+                .toList();
+    }
+
+    private static Category category(String name) {
+        return Category
+                .builder()
+                .id(UUID.randomUUID())
+                .name(name)
+                .background("background")
+                .build();
+    }
+}
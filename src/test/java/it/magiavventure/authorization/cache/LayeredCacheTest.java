@@ -0,0 +1,387 @@
+package it.magiavventure.authorization.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Layered cache tests")
+class LayeredCacheTest {
+
+    @Mock
+    private Cache remote;
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+    private SimpleMeterRegistry lookupRegistry;
+    private LayeredCache layeredCache;
+
+    @BeforeEach
+    void setUp() {
+        lookupRegistry = new SimpleMeterRegistry();
+        layeredCache = new LayeredCache(remote, Caffeine.newBuilder().maximumSize(10).build(), invalidationBus,
+                null, null, new CacheLookupMetrics("user", lookupRegistry), null);
+    }
+
+    @Test
+    @DisplayName("Get value from remote cache and keep it in local cache")
+    void get_remoteHit_storedLocally() {
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.get(key)).thenReturn(new SimpleValueWrapper("value"));
+
+        Cache.ValueWrapper first = layeredCache.get(key);
+        Cache.ValueWrapper second = layeredCache.get(key);
+
+        Mockito.verify(remote, Mockito.times(1)).get(key);
+        Assertions.assertNotNull(first);
+        Assertions.assertNotNull(second);
+        Assertions.assertEquals("value", first.get());
+        Assertions.assertEquals("value", second.get());
+        Assertions.assertEquals(1, lookups("hit", "remote"));
+        Assertions.assertEquals(1, lookups("hit", "local"));
+        Assertions.assertEquals(0, lookups("miss", "remote"));
+    }
+
+    @Test
+    @DisplayName("Get value with loader on miss stores it without publishing invalidation")
+    void getWithLoader_miss_loadAndStore() {
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.get(key)).thenReturn(null);
+
+        String value = layeredCache.get(key, () -> "loaded");
+
+        Mockito.verify(remote).put(Mockito.eq(key),
+                Mockito.argThat(cached -> "loaded".equals(((CachedValue) cached).getValue())));
+        Mockito.verifyNoInteractions(invalidationBus);
+        Assertions.assertEquals("loaded", value);
+        Assertions.assertEquals("loaded", layeredCache.get(key, String.class));
+        Assertions.assertEquals(1, lookups("miss", "remote"));
+    }
+
+    @Test
+    @DisplayName("Evict value from both layers and publish invalidation")
+    void evict_ok() {
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.getName()).thenReturn("user");
+        Mockito.when(remote.get(key)).thenReturn(new SimpleValueWrapper("value"), (Cache.ValueWrapper) null);
+
+        layeredCache.get(key);
+        layeredCache.evict(key);
+
+        Mockito.verify(remote).evict(key);
+        Mockito.verify(invalidationBus).publish("user", key.toString());
+        Assertions.assertNull(layeredCache.get(key));
+    }
+
+    @Test
+    @DisplayName("Clear both layers and publish invalidation of all keys")
+    void clear_ok() {
+        Mockito.when(remote.getName()).thenReturn("users");
+
+        layeredCache.clear();
+
+        Mockito.verify(remote).clear();
+        Mockito.verify(invalidationBus).publish("users", null);
+    }
+
+    @Test
+    @DisplayName("Without local layer every get goes to remote cache and nothing is published")
+    void withoutLocal_remoteOnly() {
+        LayeredCache remoteOnly = new LayeredCache(remote, null, invalidationBus, null, null, null, null);
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.get(key)).thenReturn(new SimpleValueWrapper("value"));
+
+        remoteOnly.get(key);
+        remoteOnly.get(key);
+        remoteOnly.evict(key);
+
+        Mockito.verify(remote, Mockito.times(2)).get(key);
+        Mockito.verifyNoInteractions(invalidationBus);
+        Assertions.assertFalse(remoteOnly.hasLocal());
+    }
+
+    @Test
+    @DisplayName("Concurrent misses on the same key run a single load")
+    void getWithLoader_concurrentMisses_singleLoad() throws Exception {
+        UUID key = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CompletableFuture<String> release = new CompletableFuture<>();
+        Mockito.when(remote.get(key)).thenReturn(null);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executorService.submit(() -> layeredCache.get(key, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                return release.get(5, TimeUnit.SECONDS);
+            }));
+            Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> second = executorService.submit(() -> layeredCache.get(key, () -> {
+                loads.incrementAndGet();
+                return "second";
+            }));
+            Thread.sleep(50);
+            release.complete("loaded");
+
+            Assertions.assertEquals("loaded", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("loaded", second.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, loads.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Failed load is propagated to the waiting callers")
+    void getWithLoader_loadFailure_propagated() {
+        UUID key = UUID.randomUUID();
+        IllegalStateException failure = new IllegalStateException("not found");
+        Mockito.when(remote.get(key)).thenReturn(null);
+
+        Cache.ValueRetrievalException exception = Assertions.assertThrows(Cache.ValueRetrievalException.class,
+                () -> layeredCache.get(key, () -> {
+                    throw failure;
+                }));
+
+        Assertions.assertEquals(failure, exception.getCause());
+        Mockito.verify(remote, Mockito.never()).put(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("When another node holds the load lock the value it loads is used")
+    void getWithLoader_lockedByOtherNode_awaitValue() {
+        CacheLoadLock loadLock = Mockito.mock(CacheLoadLock.class);
+        LayeredCache lockedCache = new LayeredCache(remote, null, invalidationBus, loadLock, null, null, null);
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.getName()).thenReturn("user");
+        Mockito.when(remote.get(key)).thenReturn(null);
+        Mockito.when(loadLock.tryLock("user", key.toString())).thenReturn(null);
+        Mockito.when(loadLock.awaitValue(Mockito.any())).thenReturn(new SimpleValueWrapper("loaded elsewhere"));
+
+        String value = lockedCache.get(key, () -> "loaded here");
+
+        Assertions.assertEquals("loaded elsewhere", value);
+        Mockito.verify(remote, Mockito.never()).put(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Entry read inside the refresh window is returned and reloaded in background")
+    void getWithLoader_insideRefreshWindow_refreshed() {
+        CacheRefreshExecutor executor = new CacheRefreshExecutor(1, 1);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LayeredCache refreshingCache = new LayeredCache(remote, null, invalidationBus, null,
+                new CacheRefresher("user", executor, Duration.ofMinutes(10), Duration.ofMinutes(10), meterRegistry),
+                null, null);
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.get(key))
+                .thenReturn(new SimpleValueWrapper(new CachedValue("current", System.currentTimeMillis())));
+
+        try {
+            String value = refreshingCache.get(key, () -> "refreshed");
+
+            Assertions.assertEquals("current", value);
+            Mockito.verify(remote, Mockito.timeout(5000)).put(Mockito.eq(key),
+                    Mockito.argThat(cached -> "refreshed".equals(((CachedValue) cached).getValue())));
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Reload overtaken by an eviction of its key doesn't write the loaded value")
+    void getWithLoader_refreshEvicted_notStored() throws Exception {
+        CacheRefreshExecutor executor = new CacheRefreshExecutor(1, 1);
+        LayeredCache refreshingCache = new LayeredCache(remote, null, invalidationBus, null,
+                new CacheRefresher("user", executor, Duration.ofMinutes(10), Duration.ofMinutes(10),
+                        new SimpleMeterRegistry()), null, null);
+        UUID key = UUID.randomUUID();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch evicted = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        Mockito.when(remote.get(key))
+                .thenReturn(new SimpleValueWrapper(new CachedValue("current", System.currentTimeMillis())));
+
+        try {
+            String value = refreshingCache.get(key, () -> {
+                loading.countDown();
+                Assertions.assertTrue(evicted.await(5, TimeUnit.SECONDS));
+                reloaded.countDown();
+                return "stale";
+            });
+            Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            refreshingCache.evict(key);
+            evicted.countDown();
+
+            Assertions.assertEquals("current", value);
+            Assertions.assertTrue(reloaded.await(5, TimeUnit.SECONDS));
+            Mockito.verify(remote, Mockito.after(200).never()).put(Mockito.any(), Mockito.any());
+            Mockito.verify(remote).evict(key);
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Entry read outside the refresh window is returned without reloading it")
+    void getWithLoader_outsideRefreshWindow_notRefreshed() {
+        CacheRefreshExecutor executor = new CacheRefreshExecutor(1, 1);
+        LayeredCache refreshingCache = new LayeredCache(remote, null, invalidationBus, null,
+                new CacheRefresher("user", executor, Duration.ofMinutes(10), Duration.ofMinutes(1),
+                        new SimpleMeterRegistry()), null, null);
+        UUID key = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        Mockito.when(remote.get(key))
+                .thenReturn(new SimpleValueWrapper(new CachedValue("current", System.currentTimeMillis())));
+
+        try {
+            String value = refreshingCache.get(key, () -> {
+                loads.incrementAndGet();
+                return "refreshed";
+            });
+
+            Assertions.assertEquals("current", value);
+            Assertions.assertEquals(0, loads.get());
+            Mockito.verify(remote, Mockito.never()).put(Mockito.any(), Mockito.any());
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @DisplayName("Async retrieve with loader shares the load and fills the local layer")
+    void retrieveWithLoader_miss_singleLoad() {
+        UUID key = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Object> remoteLoad = new CompletableFuture<>();
+        Mockito.when(remote.retrieve(Mockito.eq(key), Mockito.<Supplier<CompletableFuture<Object>>>any()))
+                .thenAnswer(invocation -> {
+                    Supplier<CompletableFuture<Object>> loader = invocation.getArgument(1);
+                    return loader.get().thenCombine(remoteLoad, (value, ignored) -> value);
+                });
+
+        CompletableFuture<String> first = layeredCache.retrieve(key, () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("loaded");
+        });
+        CompletableFuture<String> second = layeredCache.retrieve(key, () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        remoteLoad.complete(null);
+
+        Assertions.assertEquals("loaded", first.join());
+        Assertions.assertEquals("loaded", second.join());
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals("loaded", layeredCache.get(key, String.class));
+        Mockito.verify(remote, Mockito.times(1)).retrieve(Mockito.eq(key), Mockito.any(Supplier.class));
+    }
+
+    @Test
+    @DisplayName("Get all reads the local layer first and the remote one for the misses")
+    void getAll_ok() {
+        UUID local = UUID.randomUUID();
+        UUID remoteOnly = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        Mockito.when(remote.get(local)).thenReturn(new SimpleValueWrapper("local"));
+        layeredCache.get(local);
+        Mockito.when(remote.get(remoteOnly)).thenReturn(new SimpleValueWrapper("remote"));
+        Mockito.when(remote.get(missing)).thenReturn(null);
+
+        Map<Object, Object> values = layeredCache.getAll(List.of(local, remoteOnly, missing));
+
+        Assertions.assertEquals(Map.of(local, "local", remoteOnly, "remote"), values);
+        Mockito.verify(remote, Mockito.times(1)).get(local);
+        Assertions.assertEquals(1, lookups("hit", "local"));
+        Assertions.assertEquals(2, lookups("hit", "remote"));
+        Assertions.assertEquals(1, lookups("miss", "remote"));
+    }
+
+    @Test
+    @DisplayName("Put all fills both layers without publishing invalidation")
+    void putAll_ok() {
+        UUID key = UUID.randomUUID();
+
+        layeredCache.putAll(Map.of(key, "value"));
+
+        Mockito.verify(remote).put(Mockito.eq(key),
+                Mockito.argThat(cached -> "value".equals(((CachedValue) cached).getValue())));
+        Mockito.verifyNoInteractions(invalidationBus);
+        Assertions.assertEquals("value", layeredCache.get(key, String.class));
+    }
+
+    @Test
+    @DisplayName("Evict all removes the keys from both layers and publishes them at once")
+    void evictAll_ok() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        Mockito.when(remote.getName()).thenReturn("user");
+
+        layeredCache.evictAll(List.of(first, second));
+
+        Mockito.verify(remote).evict(first);
+        Mockito.verify(remote).evict(second);
+        Mockito.verify(invalidationBus).publishAll("user", List.of(first.toString(), second.toString()));
+    }
+
+    @Test
+    @DisplayName("Update replaces the remote value, evicts the local copy and publishes the key")
+    void update_ok() {
+        UUID key = UUID.randomUUID();
+        Mockito.when(remote.getName()).thenReturn("user");
+        Mockito.when(remote.get(key)).thenReturn(new SimpleValueWrapper(new CachedValue("value", 1L)));
+        layeredCache.get(key);
+
+        layeredCache.update(key, value -> value + "-changed");
+
+        Mockito.verify(remote).put(Mockito.eq(key),
+                Mockito.argThat(cached -> "value-changed".equals(((CachedValue) cached).getValue())));
+        Mockito.verify(invalidationBus).publish("user", key.toString());
+        Mockito.verify(remote, Mockito.times(2)).get(key);
+    }
+
+    @Test
+    @DisplayName("Update with a null result evicts the key and leaves a missing key untouched")
+    void update_evictAndMissing() {
+        UUID key = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        Mockito.when(remote.get(key)).thenReturn(new SimpleValueWrapper(new CachedValue("value", 1L)));
+
+        layeredCache.update(key, value -> null);
+        layeredCache.update(missing, value -> Assertions.fail("Change applied on a missing key"));
+
+        Mockito.verify(remote).evict(key);
+        Mockito.verify(remote, Mockito.never()).put(Mockito.eq(missing), Mockito.any());
+    }
+
+    private double lookups(String result, String tier) {
+        return lookupRegistry.get("authorization.cache.lookups")
+                .tag("cache", "user")
+                .tag("result", result)
+                .tag("tier", tier)
+                .counter()
+                .count();
+    }
+}
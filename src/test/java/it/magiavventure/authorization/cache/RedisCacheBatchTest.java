@@ -0,0 +1,90 @@
+package it.magiavventure.authorization.cache;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("Redis cache batch tests")
+class RedisCacheBatchTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>("redis:7.2-alpine").withExposedPorts(6379);
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisCache cache;
+    private static RedisCacheBatch batch;
+
+    @BeforeAll
+    static void setUpRedis() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(REDIS.getHost(),
+                REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        RedisCacheManager cacheManager = RedisCacheManager
+                .builder(connectionFactory)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig())
+                .build();
+        cacheManager.afterPropertiesSet();
+        cache = (RedisCache) cacheManager.getCache("users");
+        batch = new RedisCacheBatch(connectionFactory);
+    }
+
+    @AfterAll
+    static void tearDownRedis() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    @DisplayName("Update applies the change again when another writer changed the key meanwhile")
+    @SuppressWarnings("unchecked")
+    void update_concurrentWriter_bothApplied() {
+        String key = UUID.randomUUID().toString();
+        cache.put(key, new ArrayList<>(List.of("anna")));
+        AtomicBoolean first = new AtomicBoolean(true);
+
+        batch.update(cache, key, value -> {
+            if (first.getAndSet(false))
+                CompletableFuture.runAsync(() -> batch.update(cache, key, other -> append(other, "bruno"))).join();
+            return append(value, "carlo");
+        });
+
+        Assertions.assertEquals(List.of("anna", "bruno", "carlo"), cache.get(key, List.class));
+    }
+
+    @Test
+    @DisplayName("Update leaves a missing key untouched and deletes the key on a null result")
+    void update_missingAndDelete() {
+        String missing = UUID.randomUUID().toString();
+        String key = UUID.randomUUID().toString();
+        cache.put(key, new ArrayList<>(List.of("anna")));
+
+        batch.update(cache, missing, value -> Assertions.fail("Change applied on a missing key"));
+        batch.update(cache, key, value -> null);
+
+        Assertions.assertNull(cache.get(missing));
+        Assertions.assertNull(cache.get(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object append(Object value, String name) {
+        List<String> names = new ArrayList<>((List<String>) value);
+        names.add(name);
+        return names;
+    }
+}
@@ -0,0 +1,198 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.mongo.entity.EUser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Revocation set tests")
+class RevocationSetTest {
+
+    @Mock
+    private UserQueryRepository userQueryRepository;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ApplicationEventPublisher applicationEventPublisher;
+    private SimpleMeterRegistry meterRegistry;
+    private AuthorizationProperties authorizationProperties;
+    private RevocationSet revocationSet;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        authorizationProperties = new AuthorizationProperties();
+        authorizationProperties.getRevocation().setEnabled(true);
+        revocationSet = new RevocationSet(userQueryRepository, stringRedisTemplate, applicationEventPublisher,
+                authorizationProperties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Revoked user is rejected and the revocation is published to the other nodes")
+    void revoke_ok() {
+        UUID id = UUID.randomUUID();
+
+        revocationSet.revoke(id, LocalDateTime.now().plusMinutes(5));
+
+        Assertions.assertTrue(revocationSet.isRevoked(id));
+        Assertions.assertFalse(revocationSet.isRevoked(UUID.randomUUID()));
+        Assertions.assertEquals(Set.of(id), revocationSet.activeBans().keySet());
+        Mockito.verify(stringRedisTemplate).convertAndSend(Mockito.eq("magiavventure:authorization:revocations"),
+                Mockito.startsWith(id + "|"));
+        Assertions.assertEquals(1.0, meterRegistry.get("authorization.revocations").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Expired revocation is not kept")
+    void revoke_expired() {
+        UUID id = UUID.randomUUID();
+
+        revocationSet.revoke(id, LocalDateTime.now().minusMinutes(5));
+
+        Assertions.assertFalse(revocationSet.isRevoked(id));
+        Assertions.assertEquals(0.0, meterRegistry.get("authorization.revocations").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Revocations received from the other nodes are applied, malformed ones ignored")
+    void onMessage_ok() {
+        UUID id = UUID.randomUUID();
+        long expiration = System.currentTimeMillis() + 60_000;
+
+        revocationSet.onMessage(message(id + "|" + expiration + "|" + System.currentTimeMillis()), null);
+        revocationSet.onMessage(message("malformed"), null);
+
+        Assertions.assertTrue(revocationSet.isRevoked(id));
+        Assertions.assertEquals(1.0, meterRegistry.get("authorization.revocations").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Lifted revocations are removed here and on the other nodes")
+    void liftAll_ok() {
+        UUID lifted = UUID.randomUUID();
+        UUID liftedElsewhere = UUID.randomUUID();
+        revocationSet.revokeAll(List.of(lifted, liftedElsewhere), LocalDateTime.now().plusMinutes(5));
+
+        revocationSet.liftAll(List.of(lifted));
+        revocationSet.onMessage(message(liftedElsewhere + "|0|" + System.currentTimeMillis()), null);
+
+        Mockito.verify(stringRedisTemplate).convertAndSend(Mockito.eq("magiavventure:authorization:revocations"),
+                Mockito.startsWith(lifted + "|0|"));
+        Assertions.assertFalse(revocationSet.isRevoked(lifted));
+        Assertions.assertFalse(revocationSet.isRevoked(liftedElsewhere));
+        Assertions.assertTrue(revocationSet.activeBans().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Last change wins, late changes older than the applied one are discarded")
+    void onMessage_lastWriteWins() {
+        UUID shortened = UUID.randomUUID();
+        UUID lifted = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        revocationSet.onMessage(message(shortened + "|" + (now + 3_600_000) + "|" + now), null);
+        revocationSet.onMessage(message(lifted + "|0|" + (now + 2)), null);
+
+        revocationSet.onMessage(message(shortened + "|" + (now + 60_000) + "|" + (now + 1)), null);
+        revocationSet.onMessage(message(lifted + "|" + (now + 60_000) + "|" + (now + 1)), null);
+
+        Assertions.assertTrue(revocationSet.isRevoked(shortened));
+        Assertions.assertEquals(now + 60_000, revocationSet.activeBans().get(shortened)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        Assertions.assertFalse(revocationSet.isRevoked(lifted));
+    }
+
+    @Test
+    @DisplayName("Active bans are loaded on startup")
+    void seed_ok() {
+        EUser banned = EUser.builder()
+                .id(UUID.randomUUID())
+                .banExpiration(LocalDateTime.now().plusHours(1))
+                .build();
+        Mockito.when(userQueryRepository.streamBanned(Mockito.any(LocalDateTime.class)))
+                .thenReturn(Stream.of(banned));
+
+        revocationSet.seed();
+
+        Assertions.assertTrue(revocationSet.isRevoked(banned.getId()));
+    }
+
+    @Test
+    @DisplayName("Reseed lifts the bans no longer active and keeps the changes made after it")
+    void seed_reconcile() {
+        UUID liftedElsewhere = UUID.randomUUID();
+        UUID bannedElsewhere = UUID.randomUUID();
+        UUID liftedLater = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        revocationSet.onMessage(message(liftedElsewhere + "|" + (now + 60_000) + "|" + now), null);
+        revocationSet.onMessage(message(liftedLater + "|0|" + (now + 60_000)), null);
+        Mockito.when(userQueryRepository.streamBanned(Mockito.any(LocalDateTime.class)))
+                .thenReturn(Stream.of(
+                        EUser.builder().id(bannedElsewhere).banExpiration(LocalDateTime.now().plusHours(1)).build(),
+                        EUser.builder().id(liftedLater).banExpiration(LocalDateTime.now().plusHours(1)).build()));
+
+        revocationSet.seed();
+
+        Assertions.assertFalse(revocationSet.isRevoked(liftedElsewhere));
+        Assertions.assertTrue(revocationSet.isRevoked(bannedElsewhere));
+        Assertions.assertFalse(revocationSet.isRevoked(liftedLater));
+    }
+
+    @Test
+    @DisplayName("Expired bans are removed and announced")
+    void expire_ok() throws InterruptedException {
+        authorizationProperties.getRevocation().setTick(Duration.ofMillis(10));
+        revocationSet = new RevocationSet(userQueryRepository, stringRedisTemplate, applicationEventPublisher,
+                authorizationProperties, meterRegistry);
+        UUID expiring = UUID.randomUUID();
+        UUID active = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        revocationSet.onMessage(message(expiring + "|" + (now + 50) + "|" + now), null);
+        revocationSet.onMessage(message(active + "|" + (now + 60_000) + "|" + now), null);
+
+        Thread.sleep(100);
+        revocationSet.expire();
+
+        Mockito.verify(applicationEventPublisher).publishEvent(new BanExpiredEvent(expiring));
+        Assertions.assertFalse(revocationSet.isRevoked(expiring));
+        Assertions.assertTrue(revocationSet.isRevoked(active));
+        Mockito.verify(applicationEventPublisher, Mockito.never()).publishEvent(new BanExpiredEvent(active));
+    }
+
+    @Test
+    @DisplayName("Disabled set never revokes")
+    void disabled_neverRevoked() {
+        authorizationProperties.getRevocation().setEnabled(false);
+        UUID id = UUID.randomUUID();
+
+        revocationSet.seed();
+        revocationSet.revoke(id, LocalDateTime.now().plusMinutes(5));
+
+        Assertions.assertFalse(revocationSet.isRevoked(id));
+        Mockito.verifyNoInteractions(userQueryRepository, stringRedisTemplate);
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage("channel".getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
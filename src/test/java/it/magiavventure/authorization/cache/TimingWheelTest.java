@@ -0,0 +1,62 @@
+package it.magiavventure.authorization.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+@DisplayName("Timing wheel tests")
+class TimingWheelTest {
+
+    @Test
+    @DisplayName("Keys expire on the tick of their deadline")
+    void advance_expiresOnDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 3, 0);
+
+        Assertions.assertTrue(wheel.schedule("a", 25));
+        Assertions.assertTrue(wheel.schedule("b", 41));
+
+        Assertions.assertEquals(List.of(), wheel.advance(20));
+        Assertions.assertEquals(List.of("a"), wheel.advance(30));
+        Assertions.assertEquals(List.of("b"), wheel.advance(50));
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("Far deadlines are moved down the levels and expire on time")
+    void advance_cascadesLevels() {
+        TimingWheel<String> wheel = new TimingWheel<>(1, 4, 3, 0);
+
+        wheel.schedule("level2", 37);
+        wheel.schedule("overflow", 150);
+
+        Assertions.assertEquals(List.of(), wheel.advance(36));
+        Assertions.assertEquals(List.of("level2"), wheel.advance(37));
+        Assertions.assertEquals(List.of(), wheel.advance(149));
+        Assertions.assertEquals(List.of("overflow"), wheel.advance(150));
+    }
+
+    @Test
+    @DisplayName("Cancelled and rescheduled keys expire only on the last deadline")
+    void cancelAndReschedule() {
+        TimingWheel<String> wheel = new TimingWheel<>(1, 4, 3, 0);
+
+        wheel.schedule("cancelled", 5);
+        wheel.schedule("moved", 5);
+        wheel.cancel("cancelled");
+        wheel.schedule("moved", 20);
+
+        Assertions.assertEquals(List.of(), wheel.advance(19));
+        Assertions.assertEquals(List.of("moved"), wheel.advance(20));
+    }
+
+    @Test
+    @DisplayName("Deadlines already reached are not scheduled")
+    void schedule_pastDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 3, 100);
+
+        Assertions.assertFalse(wheel.schedule("past", 90));
+        Assertions.assertEquals(0, wheel.size());
+    }
+}
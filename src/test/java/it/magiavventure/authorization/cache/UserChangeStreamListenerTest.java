@@ -0,0 +1,204 @@
+package it.magiavventure.authorization.cache;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import org.bson.UuidRepresentation;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs against a single node Mongo replica set, since change streams aren't available on a standalone server.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@DisplayName("User change stream listener tests")
+class UserChangeStreamListenerTest {
+    private static final String RESUME_TOKEN_KEY = "magiavventure:authorization:users-resume-token";
+    private static final String LEASE_KEY = "magiavventure:authorization:users-change-stream-lease";
+    private static final long TIMEOUT = 10_000;
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+    private static MongoClient mongoClient;
+    private static MongoTemplate mongoTemplate;
+
+    private final StringRedisTemplate stringRedisTemplate = Mockito.mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+    private final CacheManager cacheManager = Mockito.mock(CacheManager.class);
+    private final UserBatchCache userBatchCache = Mockito.mock(UserBatchCache.class);
+    private final UserListCache userListCache = Mockito.mock(UserListCache.class);
+    private final UserTombstones userTombstones = Mockito.mock(UserTombstones.class);
+    private final UserNameFilter userNameFilter = Mockito.mock(UserNameFilter.class);
+    private final RevocationSet revocationSet = Mockito.mock(RevocationSet.class);
+    private UserChangeStreamListener listener;
+
+    @BeforeAll
+    static void setUpMongo() {
+        mongoClient = MongoClients.create(MongoClientSettings
+                .builder()
+                .applyConnectionString(new ConnectionString(MONGO.getReplicaSetUrl("authorization")))
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .build());
+        mongoTemplate = new MongoTemplate(mongoClient, "authorization");
+    }
+
+    @AfterAll
+    static void tearDownMongo() {
+        mongoClient.close();
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws InterruptedException {
+        mongoTemplate.dropCollection(EUser.class);
+        mongoTemplate.createCollection(EUser.class);
+        Mockito.when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        Mockito.when(stringRedisTemplate.execute(Mockito.any(RedisScript.class), Mockito.eq(List.of(LEASE_KEY)),
+                        Mockito.any(), Mockito.any()))
+                .thenReturn(1L);
+        listener = start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    @DisplayName("Evict and update in the users list the users inserted and updated by other writers")
+    void onMessage_insertAndUpdate() {
+        UUID id = UUID.randomUUID();
+
+        mongoTemplate.insert(user(id, "anna"));
+        Mockito.verify(userListCache, Mockito.timeout(TIMEOUT))
+                .upsert(Mockito.argThat(user -> "anna".equals(user.getName())));
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)), Update.update("name", "bruna"), EUser.class);
+
+        ArgumentCaptor<User> userArgumentCaptor = ArgumentCaptor.forClass(User.class);
+        Mockito.verify(userListCache, Mockito.timeout(TIMEOUT).times(2)).upsert(userArgumentCaptor.capture());
+        Mockito.verify(userBatchCache, Mockito.times(2)).evictEntries(List.of(id));
+        Mockito.verify(userTombstones, Mockito.times(2)).remove(id);
+        Mockito.verify(userNameFilter).add("anna");
+        Mockito.verify(userNameFilter).add("bruna");
+        Mockito.verify(valueOperations, Mockito.timeout(TIMEOUT).times(2))
+                .set(Mockito.eq(RESUME_TOKEN_KEY), Mockito.anyString());
+        Assertions.assertEquals(id, userArgumentCaptor.getValue().getId());
+        Assertions.assertEquals("bruna", userArgumentCaptor.getValue().getName());
+    }
+
+    @Test
+    @DisplayName("Share the bans written by other writers through the revocation set")
+    void onMessage_ban() {
+        UUID id = UUID.randomUUID();
+        LocalDateTime banExpiration = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MILLIS);
+        mongoTemplate.insert(user(id, "anna"));
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)),
+                Update.update("banExpiration", banExpiration), EUser.class);
+
+        Mockito.verify(revocationSet, Mockito.timeout(TIMEOUT))
+                .sync(Mockito.eq(id), Mockito.eq(banExpiration), Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("A node without the lease doesn't consume the stream, and stops when another node takes it")
+    @SuppressWarnings("unchecked")
+    void watch_leaseHeldElsewhere() {
+        Mockito.when(stringRedisTemplate.execute(Mockito.any(RedisScript.class), Mockito.eq(List.of(LEASE_KEY)),
+                        Mockito.any(), Mockito.any()))
+                .thenReturn(0L);
+
+        listener.watch();
+        mongoTemplate.insert(user(UUID.randomUUID(), "anna"));
+
+        Assertions.assertFalse(listener.isWatching());
+        Mockito.verify(userBatchCache, Mockito.after(1_000).never()).evictEntries(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Evict and remove from the users list the users deleted by other writers")
+    void onMessage_delete() {
+        UUID id = UUID.randomUUID();
+        mongoTemplate.insert(user(id, "anna"));
+        Mockito.verify(userListCache, Mockito.timeout(TIMEOUT)).upsert(Mockito.any(User.class));
+
+        mongoTemplate.remove(Query.query(Criteria.where("id").is(id)), EUser.class);
+
+        Mockito.verify(userListCache, Mockito.timeout(TIMEOUT)).discard(id);
+        Mockito.verify(userBatchCache, Mockito.times(2)).evictEntries(List.of(id));
+        Mockito.verify(revocationSet).sync(Mockito.eq(id), Mockito.isNull(), Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Resume after a restart from the saved token without missing the changes made while stopped")
+    void start_resume() throws InterruptedException {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        ArgumentCaptor<String> resumeTokenArgumentCaptor = ArgumentCaptor.forClass(String.class);
+        mongoTemplate.insert(user(first, "anna"));
+        Mockito.verify(valueOperations, Mockito.timeout(TIMEOUT))
+                .set(Mockito.eq(RESUME_TOKEN_KEY), resumeTokenArgumentCaptor.capture());
+        listener.stop();
+
+        mongoTemplate.insert(user(second, "bruna"));
+        Mockito.when(valueOperations.get(RESUME_TOKEN_KEY)).thenReturn(resumeTokenArgumentCaptor.getValue());
+        listener = start();
+
+        Mockito.verify(userBatchCache, Mockito.timeout(TIMEOUT)).evictEntries(List.of(second));
+        Mockito.verify(userBatchCache, Mockito.times(1)).evictEntries(List.of(first));
+    }
+
+    private UserChangeStreamListener start() throws InterruptedException {
+        AuthorizationProperties authorizationProperties = new AuthorizationProperties();
+        authorizationProperties.getChangeStream().setEnabled(true);
+        UserChangeStreamListener userChangeStreamListener = new UserChangeStreamListener(mongoTemplate,
+                stringRedisTemplate, cacheManager, userBatchCache, userListCache, userTombstones, userNameFilter,
+                revocationSet, Mappers.getMapper(UserMapper.class), new SimpleMeterRegistry(), authorizationProperties);
+        userChangeStreamListener.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!userChangeStreamListener.isWatching() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assertions.assertTrue(userChangeStreamListener.isWatching());
+        return userChangeStreamListener;
+    }
+
+    private static EUser user(UUID id, String name) {
+        return EUser
+                .builder()
+                .id(id)
+                .name(name)
+                .authorities(List.of("user"))
+                .build();
+    }
+}
@@ -0,0 +1,129 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.mongo.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.List;
+import java.util.UUID;
+
+@DisplayName("User list cache tests")
+class UserListCacheTest {
+
+    private Cache cache;
+    private UserListCache userListCache;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("users");
+        cache = cacheManager.getCache("users");
+        userListCache = new UserListCache(cacheManager);
+    }
+
+    @Test
+    @DisplayName("Insert user keeping name order")
+    void insert_ok() {
+        User anna = user("anna");
+        User carlo = user("carlo");
+        User bruno = user("bruno");
+        cache.put("all", List.of(anna, carlo));
+
+        userListCache.insert(bruno);
+
+        Assertions.assertIterableEquals(List.of(anna, bruno, carlo), cachedUsers());
+    }
+
+    @Test
+    @DisplayName("Replace user moving it to the new name position")
+    void replace_ok() {
+        User anna = user("anna");
+        User bruno = user("bruno");
+        User carlo = user("carlo");
+        cache.put("all", List.of(anna, bruno, carlo));
+        User renamed = User.builder().id(anna.getId()).name("davide").build();
+
+        userListCache.replace(renamed);
+
+        Assertions.assertIterableEquals(List.of(bruno, carlo, renamed), cachedUsers());
+    }
+
+    @Test
+    @DisplayName("Remove user")
+    void remove_ok() {
+        User anna = user("anna");
+        User bruno = user("bruno");
+        cache.put("all", List.of(anna, bruno));
+
+        userListCache.remove(anna.getId());
+
+        Assertions.assertIterableEquals(List.of(bruno), cachedUsers());
+    }
+
+    @Test
+    @DisplayName("Replace of a user not in the list evicts the cached list")
+    void replace_drift_evict() {
+        cache.put("all", List.of(user("anna")));
+
+        userListCache.replace(user("bruno"));
+
+        Assertions.assertNull(cache.get("all"));
+    }
+
+    @Test
+    @DisplayName("Insert of a user already in the list evicts the cached list")
+    void insert_drift_evict() {
+        User anna = user("anna");
+        cache.put("all", List.of(anna));
+
+        userListCache.insert(anna);
+
+        Assertions.assertNull(cache.get("all"));
+    }
+
+    @Test
+    @DisplayName("Upsert inserts a missing user and replaces a present one without evicting")
+    void upsert_ok() {
+        User anna = user("anna");
+        User carlo = user("carlo");
+        cache.put("all", List.of(anna, carlo));
+        User bruno = user("bruno");
+        User renamed = User.builder().id(anna.getId()).name("davide").build();
+
+        userListCache.upsert(bruno);
+        userListCache.upsert(renamed);
+
+        Assertions.assertIterableEquals(List.of(bruno, carlo, renamed), cachedUsers());
+    }
+
+    @Test
+    @DisplayName("Discard of a user not in the list keeps the cached list")
+    void discard_missing_keep() {
+        User anna = user("anna");
+        cache.put("all", List.of(anna));
+
+        userListCache.discard(UUID.randomUUID());
+
+        Assertions.assertIterableEquals(List.of(anna), cachedUsers());
+    }
+
+    @Test
+    @DisplayName("Nothing is cached on cold cache")
+    void insert_coldCache_nothingCached() {
+        userListCache.insert(user("anna"));
+
+        Assertions.assertNull(cache.get("all"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<User> cachedUsers() {
+        return cache.get("all", List.class);
+    }
+
+    private static User user(String name) {
+        return User.builder().id(UUID.randomUUID()).name(name).build();
+    }
+}
@@ -0,0 +1,148 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("User name filter tests")
+class UserNameFilterTest {
+
+    @Mock
+    private UserQueryRepository userQueryRepository;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private AuthorizationProperties authorizationProperties;
+    private UserNameFilter userNameFilter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        authorizationProperties = new AuthorizationProperties();
+        authorizationProperties.getNameFilter().setEnabled(true);
+        authorizationProperties.getNameFilter().setExpectedInsertions(100);
+        userNameFilter = new UserNameFilter(userQueryRepository, stringRedisTemplate, authorizationProperties,
+                meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Before seeding every name might exist")
+    void mightContain_notSeeded() {
+        Assertions.assertTrue(userNameFilter.mightContain("anna"));
+    }
+
+    @Test
+    @DisplayName("Seeded names are found case insensitive, others are definitely free")
+    void seed_ok() {
+        Mockito.when(userQueryRepository.streamNames())
+                .thenReturn(Stream.of("Anna", "Bruno"));
+
+        userNameFilter.seed();
+
+        Assertions.assertTrue(userNameFilter.mightContain("anna"));
+        Assertions.assertTrue(userNameFilter.mightContain("BRUNO"));
+        Assertions.assertFalse(userNameFilter.mightContain("carlo"));
+        Assertions.assertEquals(1.0, meterRegistry.get("authorization.name.filter.lookups")
+                .tag("result", "negative").counter().count());
+        Assertions.assertEquals(2.0, meterRegistry.get("authorization.name.filter.insertions").gauge().value());
+        Assertions.assertEquals(1, meterRegistry.get("authorization.name.filter.rebuild").timer().count());
+    }
+
+    @Test
+    @DisplayName("Names equal for the case insensitive collation of the index are found")
+    void seed_collationEquivalents() {
+        Mockito.when(userQueryRepository.streamNames())
+                .thenReturn(Stream.of("Straße", "ﬁona", "Ａｎｎａ"));
+
+        userNameFilter.seed();
+
+        Assertions.assertTrue(userNameFilter.mightContain("STRASSE"));
+        Assertions.assertTrue(userNameFilter.mightContain("Fiona"));
+        Assertions.assertTrue(userNameFilter.mightContain("anna"));
+        Assertions.assertEquals(UserNameFilter.normalize("Jose\u0301"), UserNameFilter.normalize("JOSÉ"));
+    }
+
+    @Test
+    @DisplayName("Added names are found and published to the other nodes")
+    void add_ok() {
+        Mockito.when(userQueryRepository.streamNames())
+                .thenReturn(Stream.of("Anna"));
+        userNameFilter.seed();
+
+        userNameFilter.add("Carlo");
+
+        Mockito.verify(stringRedisTemplate).convertAndSend("magiavventure:authorization:user-name-keys",
+                UserNameFilter.normalize("carlo"));
+        Assertions.assertTrue(userNameFilter.mightContain("carlo"));
+    }
+
+    @Test
+    @DisplayName("Names received from the other nodes are added")
+    void onMessage_ok() {
+        Mockito.when(userQueryRepository.streamNames())
+                .thenReturn(Stream.of("Anna"));
+        userNameFilter.seed();
+
+        userNameFilter.onMessage(new DefaultMessage("channel".getBytes(StandardCharsets.UTF_8),
+                UserNameFilter.normalize("carlo").getBytes(StandardCharsets.UTF_8)), null);
+
+        Assertions.assertTrue(userNameFilter.mightContain("Carlo"));
+    }
+
+    @Test
+    @DisplayName("Too many stale names trigger a rebuild")
+    void rebuildIfNeeded_stale() {
+        Mockito.when(userQueryRepository.streamNames())
+                .thenReturn(Stream.of("Anna"), Stream.of("Bruno"));
+        userNameFilter.seed();
+
+        userNameFilter.markStale();
+        userNameFilter.rebuildIfNeeded();
+
+        Mockito.verify(userQueryRepository, Mockito.times(2)).streamNames();
+        Assertions.assertTrue(userNameFilter.mightContain("bruno"));
+    }
+
+    @Test
+    @DisplayName("Filter older than the rebuild interval is rebuilt, catching up with the names it missed")
+    void rebuildIfNeeded_interval() {
+        Mockito.when(userQueryRepository.streamNames())
+                .thenReturn(Stream.of("Anna"), Stream.of("Anna", "Carlo"));
+        userNameFilter.seed();
+        userNameFilter.rebuildIfNeeded();
+        Assertions.assertFalse(userNameFilter.mightContain("carlo"));
+
+        authorizationProperties.getNameFilter().setRebuildInterval(Duration.ZERO);
+        userNameFilter.rebuildIfNeeded();
+
+        Mockito.verify(userQueryRepository, Mockito.times(2)).streamNames();
+        Assertions.assertTrue(userNameFilter.mightContain("carlo"));
+    }
+
+    @Test
+    @DisplayName("Disabled filter never answers for the database")
+    void disabled_mightContainAlways() {
+        authorizationProperties.getNameFilter().setEnabled(false);
+
+        userNameFilter.seed();
+        userNameFilter.add("anna");
+
+        Assertions.assertTrue(userNameFilter.mightContain("carlo"));
+        Mockito.verifyNoInteractions(userQueryRepository, stringRedisTemplate);
+    }
+}
@@ -0,0 +1,34 @@
+package it.magiavventure.authorization.cache;
+
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+@DisplayName("User page generation tests")
+class UserPageGenerationTest {
+    private static final String KEY = "magiavventure:authorization:users-page-generation";
+
+    @Test
+    @DisplayName("Read the current generation and move to the next one")
+    @SuppressWarnings("unchecked")
+    void generation_ok() {
+        StringRedisTemplate stringRedisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+        Mockito.when(stringRedisTemplate.opsForValue())
+                .thenReturn(valueOperations);
+        Mockito.when(valueOperations.get(KEY))
+                .thenReturn(null, "4");
+        UserPageGeneration userPageGeneration = new UserPageGeneration(stringRedisTemplate,
+                new AuthorizationProperties());
+
+        Assertions.assertEquals(0, userPageGeneration.current());
+        userPageGeneration.next();
+        Assertions.assertEquals(4, userPageGeneration.current());
+
+        Mockito.verify(valueOperations).increment(KEY);
+    }
+}
@@ -0,0 +1,53 @@
+package it.magiavventure.authorization.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.UUID;
+
+@DisplayName("User tombstones tests")
+class UserTombstonesTest {
+
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(UserTombstones.CACHE_NAME);
+    private final AuthorizationProperties authorizationProperties = new AuthorizationProperties();
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("Add, find and remove a tombstone counting the negative hits")
+    void tombstone_ok() {
+        authorizationProperties.getCache().getTombstone().setEnabled(true);
+        UserTombstones userTombstones = new UserTombstones(cacheManager, authorizationProperties, meterRegistry);
+        UUID id = UUID.randomUUID();
+
+        Assertions.assertFalse(userTombstones.contains(id));
+        userTombstones.add(id);
+        Assertions.assertTrue(userTombstones.contains(id));
+        userTombstones.remove(id);
+        Assertions.assertFalse(userTombstones.contains(id));
+
+        Assertions.assertEquals(1, meterRegistry.get("authorization.cache.negative.hits")
+                .tag("cache", UserTombstones.CACHE_NAME).counter().count());
+    }
+
+    @Test
+    @DisplayName("Ignore tombstones when disabled")
+    void tombstone_disabled() {
+        UserTombstones userTombstones = new UserTombstones(cacheManager, authorizationProperties, meterRegistry);
+        UUID id = UUID.randomUUID();
+
+        userTombstones.add(id);
+
+        Assertions.assertFalse(userTombstones.contains(id));
+        Assertions.assertNull(cacheManager.getCache(UserTombstones.CACHE_NAME).get(id));
+    }
+}
@@ -0,0 +1,48 @@
+package it.magiavventure.authorization.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+@DisplayName("User repository call event tests")
+class UserRepositoryCallEventTest {
+
+    private static final String EVENT_NAME = "it.magiavventure.authorization.UserRepositoryCall";
+
+    @Test
+    @DisplayName("Successful and failed calls are recorded with their outcome")
+    void record_ok(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT_NAME);
+            recording.start();
+
+            String result = UserRepositoryCallEvent.record("UserRepository", "findById", () -> "user");
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> UserRepositoryCallEvent.record("UserRepository", "save", () -> {
+                        throw new IllegalStateException("failure");
+                    }));
+
+            recording.stop();
+            recording.dump(file);
+            Assertions.assertEquals("user", result);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file)
+                .stream()
+                .filter(event -> EVENT_NAME.equals(event.getEventType().getName()))
+                .toList();
+        Assertions.assertEquals(2, events.size());
+        Assertions.assertEquals("findById", events.get(0).getString("method"));
+        Assertions.assertEquals("success", events.get(0).getString("outcome"));
+        Assertions.assertEquals("save", events.get(1).getString("method"));
+        Assertions.assertEquals("IllegalStateException", events.get(1).getString("outcome"));
+    }
+}
@@ -0,0 +1,45 @@
+package it.magiavventure.authorization.mapper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+@DisplayName("Authority mask tests")
+class AuthorityMaskTest {
+
+    @Test
+    @DisplayName("Encode the known authorities and map them back to names")
+    void of_names_ok() {
+        int user = AuthorityMask.of(List.of("user"));
+        int admin = AuthorityMask.of(List.of("user", "admin"));
+
+        Assertions.assertEquals(1, user);
+        Assertions.assertEquals(3, admin);
+        Assertions.assertEquals(admin, AuthorityMask.of(List.of("admin", "user")));
+        Assertions.assertEquals(0, AuthorityMask.of(null));
+        Assertions.assertEquals(List.of("user"), AuthorityMask.names(user));
+        Assertions.assertEquals(List.of("user", "admin"), AuthorityMask.names(admin));
+        Assertions.assertEquals(List.of(), AuthorityMask.names(0));
+    }
+
+    @Test
+    @DisplayName("Unknown authorities and masks can't be encoded")
+    void unknown_ko() {
+        Assertions.assertEquals(AuthorityMask.UNENCODABLE, AuthorityMask.of(List.of("user", "editor")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AuthorityMask.names(4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AuthorityMask.names(-1));
+    }
+
+    @Test
+    @DisplayName("Check the roles of an endpoint rule with the mask")
+    void anyOf_ok() {
+        int required = AuthorityMask.of(List.of("admin"));
+
+        Assertions.assertTrue(AuthorityMask.anyOf(AuthorityMask.of(List.of("user", "admin")), required));
+        Assertions.assertFalse(AuthorityMask.anyOf(AuthorityMask.of(List.of("user")), required));
+        Assertions.assertTrue(AuthorityMask.anyOf(AuthorityMask.of(List.of("user")),
+                AuthorityMask.of(List.of("user", "admin"))));
+    }
+}
@@ -1,8 +1,12 @@
 package it.magiavventure.authorization.operation;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
 import it.magiavventure.authorization.model.*;
 import it.magiavventure.authorization.service.AuthorizationService;
+import it.magiavventure.authorization.service.IntrospectionService;
 import it.magiavventure.authorization.service.UserService;
+import it.magiavventure.authorization.token.TokenSigner;
 import it.magiavventure.jwt.service.JwtService;
 import it.magiavventure.mongo.model.Category;
 import it.magiavventure.mongo.model.User;
@@ -13,11 +17,21 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("Authorization operation tests")
@@ -33,6 +47,14 @@ class AuthorizationOperationTest {
 
     @Mock
     private UserService userService;
+    @Mock
+    private IntrospectionService introspectionService;
+    @Mock
+    private TokenSigner tokenSigner;
+    @Spy
+    private AuthorizationProperties authorizationProperties = new AuthorizationProperties();
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
 
     @Test
     @DisplayName("Login user by id")
@@ -260,4 +282,203 @@ class AuthorizationOperationTest {
 
         Assertions.assertNotNull(user);
     }
+
+    @Test
+    @DisplayName("Find users page api test")
+    void findUserPage_ok() {
+        UserPage userPage = UserPage
+                .builder()
+                .users(List.of(User.builder().id(UUID.randomUUID()).name("name").build()))
+                .next("next")
+                .build();
+
+        Mockito.when(userService.findPage("cursor", 10))
+                .thenReturn(userPage);
+
+        UserPage page = authorizationOperation.findUserPage("cursor", 10);
+
+        Mockito.verify(userService).findPage("cursor", 10);
+
+        Assertions.assertEquals(userPage, page);
+    }
+
+    @Test
+    @DisplayName("Find users by ids api test")
+    void findUsers_ok() {
+        List<UUID> ids = List.of(UUID.randomUUID());
+        List<User> users = List.of(User.builder().id(ids.get(0)).build());
+
+        Mockito.when(userService.findByIds(ids))
+                .thenReturn(users);
+
+        List<User> found = authorizationOperation.findUsers(UserIds.builder().ids(ids).build());
+
+        Mockito.verify(userService).findByIds(ids);
+
+        Assertions.assertEquals(users, found);
+    }
+
+    @Test
+    @DisplayName("Login user by id with EC signed token")
+    void loginUser_byId_signed() {
+        Login login = Login.builder().id(UUID.randomUUID()).build();
+        LoginResponse loginResponse = LoginResponse
+                .builder()
+                .user(User.builder().id(login.getId()).build())
+                .token("token")
+                .signedToken("signed-token")
+                .build();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Mockito.when(authorizationService.loginById(login.getId()))
+                .thenReturn(loginResponse);
+        Mockito.when(jwtService.getTokenHeader())
+                .thenReturn("mg-a-token");
+
+        authorizationOperation.loginById(login, response);
+
+        Assertions.assertEquals("token", response.getHeader("mg-a-token"));
+        Assertions.assertEquals("signed-token", response.getHeader("mg-a-token-es"));
+    }
+
+    @Test
+    @DisplayName("Refresh token api test returning the rotated refresh token")
+    void refreshToken_ok() {
+        RefreshToken refreshToken = RefreshToken.builder().refreshToken("refresh-token").build();
+        User user = User.builder().id(UUID.randomUUID()).build();
+        LoginResponse loginResponse = LoginResponse
+                .builder()
+                .user(user)
+                .token("token")
+                .refreshToken("rotated-token")
+                .build();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Mockito.when(authorizationService.refresh("refresh-token"))
+                .thenReturn(loginResponse);
+        Mockito.when(jwtService.getTokenHeader())
+                .thenReturn("mg-a-token");
+
+        User refreshedUser = authorizationOperation.refreshToken(refreshToken, response);
+
+        Assertions.assertEquals(user, refreshedUser);
+        Assertions.assertEquals("token", response.getHeader("mg-a-token"));
+        Assertions.assertEquals("rotated-token", response.getHeader("mg-a-refresh-token"));
+        Assertions.assertNull(response.getHeader("mg-a-token-es"));
+    }
+
+    @Test
+    @DisplayName("Retrieve jwks api test with cache control")
+    void jwks_ok() {
+        Map<String, Object> jwks = Map.of("keys", List.of(Map.of("kid", "key-1")));
+
+        Mockito.when(tokenSigner.jwks())
+                .thenReturn(jwks);
+        Mockito.when(tokenSigner.jwksMaxAge())
+                .thenReturn(Duration.ofHours(1));
+
+        ResponseEntity<Map<String, Object>> response = authorizationOperation.jwks();
+
+        Assertions.assertEquals(jwks, response.getBody());
+        Assertions.assertEquals("max-age=3600, public", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    @DisplayName("Introspect token api test")
+    void introspect_ok() {
+        Introspection introspection = new Introspection(true, false, List.of("user"));
+
+        Mockito.when(introspectionService.introspect("token"))
+                .thenReturn(introspection);
+
+        Introspection response = authorizationOperation.introspect(IntrospectToken.builder().token("token").build());
+
+        Assertions.assertEquals(introspection, response);
+    }
+
+    @Test
+    @DisplayName("Introspect tokens api test")
+    void introspectAll_ok() {
+        List<Introspection> introspections = List.of(new Introspection(true, false, List.of("user")),
+                Introspection.builder().active(false).build());
+
+        Mockito.when(introspectionService.introspectAll(List.of("first", "second")))
+                .thenReturn(introspections);
+
+        List<Introspection> response = authorizationOperation.introspectAll(IntrospectTokens
+                .builder()
+                .tokens(List.of("first", "second"))
+                .build());
+
+        Assertions.assertEquals(introspections, response);
+    }
+
+    @Test
+    @DisplayName("Ban users api test")
+    void banUsers_ok() {
+        BanUsers banUsers = BanUsers
+                .builder()
+                .ids(List.of(UUID.randomUUID()))
+                .ban(BanUser.builder().duration(1).unit(BanUser.Unit.H).build())
+                .build();
+        List<Ban> bans = List.of(Ban.builder().id(banUsers.getIds().get(0)).banExpiration(LocalDateTime.now()).build());
+
+        Mockito.when(userService.banUsers(banUsers))
+                .thenReturn(bans);
+
+        List<Ban> applied = authorizationOperation.banUsers(banUsers);
+
+        Mockito.verify(userService).banUsers(banUsers);
+
+        Assertions.assertEquals(bans, applied);
+    }
+
+    @Test
+    @DisplayName("Unban users api test")
+    void unbanUsers_ok() {
+        UserIds userIds = UserIds.builder().ids(List.of(UUID.randomUUID())).build();
+
+        authorizationOperation.unbanUsers(userIds);
+
+        Mockito.verify(userService).unbanUsers(userIds);
+    }
+
+    @Test
+    @DisplayName("Find active bans api test")
+    void findActiveBans_ok() {
+        List<Ban> bans = List.of(Ban.builder().id(UUID.randomUUID()).banExpiration(LocalDateTime.now()).build());
+
+        Mockito.when(userService.findActiveBans())
+                .thenReturn(bans);
+
+        List<Ban> activeBans = authorizationOperation.findActiveBans();
+
+        Mockito.verify(userService).findActiveBans();
+
+        Assertions.assertEquals(bans, activeBans);
+    }
+
+    @Test
+    @DisplayName("Stream all users api test")
+    @SuppressWarnings("unchecked")
+    void streamAllUser_ok() throws IOException {
+        User first = User.builder().id(UUID.randomUUID()).name("first").build();
+        User second = User.builder().id(UUID.randomUUID()).name("second").build();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        Mockito.doAnswer(invocation -> {
+            Consumer<User> consumer = invocation.getArgument(0);
+            consumer.accept(first);
+            consumer.accept(second);
+            return null;
+        }).when(userService).streamAll(Mockito.any(Consumer.class));
+
+        StreamingResponseBody body = authorizationOperation.streamAllUser();
+        body.writeTo(outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertEquals(first.getId(), objectMapper.readValue(lines[0], User.class).getId());
+        Assertions.assertEquals(second.getId(), objectMapper.readValue(lines[1], User.class).getId());
+    }
 }
@@ -1,7 +1,13 @@
 package it.magiavventure.authorization.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.error.AuthorizationException;
 import it.magiavventure.authorization.mapper.UserMapper;
 import it.magiavventure.authorization.model.LoginResponse;
+import it.magiavventure.authorization.token.RefreshTokenStore;
+import it.magiavventure.authorization.token.TokenSigner;
 import it.magiavventure.common.error.MagiavventureException;
 import it.magiavventure.jwt.service.JwtService;
 import it.magiavventure.mongo.entity.EUser;
@@ -15,6 +21,7 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,8 +34,16 @@ class AuthorizationServiceTest {
     private JwtService jwtService;
     @Mock
     private UserService userService;
+    @Mock
+    private RevocationSet revocationSet;
+    @Mock
+    private TokenSigner tokenSigner;
+    @Mock
+    private RefreshTokenStore refreshTokenStore;
     @Spy
     private UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
     @Captor
     private ArgumentCaptor<User> userArgumentCaptor;
 
@@ -44,18 +59,49 @@ class AuthorizationServiceTest {
 
         Mockito.when(userService.findEntityById(id))
                 .thenReturn(eUser);
+        Mockito.when(userService.findViewById(id))
+                .thenReturn(userMapper.map(eUser));
         Mockito.when(jwtService.buildJwt(userArgumentCaptor.capture()))
                 .thenReturn("token");
 
         LoginResponse loginResponse = authorizationService.loginById(id);
 
         Mockito.verify(userService).findEntityById(id);
+        Mockito.verify(userService).findViewById(id);
         Mockito.verify(jwtService).buildJwt(userArgumentCaptor.capture());
 
         Assertions.assertNotNull(loginResponse);
         Assertions.assertEquals("token", loginResponse.getToken());
         User user = userArgumentCaptor.getValue();
         Assertions.assertEquals(user, loginResponse.getUser());
+        Assertions.assertEquals(1, meterRegistry.timer("authorization.jwt.build").count());
+    }
+
+    @Test
+    @DisplayName("Login by id also returns the EC signed token when signing is enabled")
+    void loginById_signed() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("name")
+                .build();
+
+        Mockito.when(userService.findViewById(id))
+                .thenReturn(userMapper.map(eUser));
+        Mockito.when(jwtService.buildJwt(Mockito.any(User.class)))
+                .thenReturn("token");
+        Mockito.when(tokenSigner.isEnabled())
+                .thenReturn(true);
+        Mockito.when(userService.findEntityById(id))
+                .thenReturn(eUser);
+        Mockito.when(tokenSigner.sign(eUser))
+                .thenReturn("signed-token");
+
+        LoginResponse loginResponse = authorizationService.loginById(id);
+
+        Assertions.assertEquals("token", loginResponse.getToken());
+        Assertions.assertEquals("signed-token", loginResponse.getSignedToken());
     }
 
     @Test
@@ -71,18 +117,22 @@ class AuthorizationServiceTest {
 
         Mockito.when(userService.findEntityById(id))
                 .thenReturn(eUser);
+        Mockito.when(userService.findViewById(id))
+                .thenReturn(userMapper.map(eUser));
         Mockito.when(jwtService.buildJwt(userArgumentCaptor.capture()))
                 .thenReturn("token");
 
         LoginResponse loginResponse = authorizationService.loginById(id);
 
         Mockito.verify(userService).findEntityById(id);
+        Mockito.verify(userService).findViewById(id);
         Mockito.verify(jwtService).buildJwt(userArgumentCaptor.capture());
 
         Assertions.assertNotNull(loginResponse);
         Assertions.assertEquals("token", loginResponse.getToken());
         User user = userArgumentCaptor.getValue();
         Assertions.assertEquals(user, loginResponse.getUser());
+        Assertions.assertEquals(1, meterRegistry.timer("authorization.jwt.build").count());
     }
 
     @Test
@@ -105,9 +155,171 @@ class AuthorizationServiceTest {
 
         Mockito.verify(userService).evictUserCache(eUser);
         Mockito.verify(userService).findEntityById(id);
+        Mockito.verify(userService, Mockito.never()).findViewById(id);
 
         Assertions.assertNotNull(exception);
         Assertions.assertEquals("user-blocked", exception.getError().getKey());
+        Assertions.assertEquals(1, meterRegistry.counter("authorization.login.rejections", "reason", "banned").count());
+    }
+
+    @Test
+    @DisplayName("Login by id rejected by the revocation set")
+    void loginById_revocationSetReady_userBanned() {
+        UUID id = UUID.randomUUID();
+
+        Mockito.when(revocationSet.isRevoked(id))
+                .thenReturn(true);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> authorizationService.loginById(id));
+
+        Mockito.verifyNoInteractions(userService, jwtService);
+        Assertions.assertEquals("user-blocked", exception.getError().getKey());
+        Assertions.assertInstanceOf(AuthorizationException.class, exception);
+        Assertions.assertEquals(0, exception.getStackTrace().length);
+        Assertions.assertEquals(1, meterRegistry.counter("authorization.login.rejections", "reason", "banned").count());
+    }
+
+    @Test
+    @DisplayName("Login by id also returns a refresh token when refresh is enabled")
+    void loginById_refreshToken() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("name")
+                .build();
+        User user = userMapper.map(eUser);
+
+        Mockito.when(userService.findViewById(id))
+                .thenReturn(user);
+        Mockito.when(jwtService.buildJwt(user))
+                .thenReturn("token");
+        Mockito.when(refreshTokenStore.isEnabled())
+                .thenReturn(true);
+        Mockito.when(userService.findEntityById(id))
+                .thenReturn(eUser);
+        Mockito.when(refreshTokenStore.issue(user, eUser))
+                .thenReturn("refresh-token");
+
+        LoginResponse loginResponse = authorizationService.loginById(id);
+
+        Assertions.assertEquals("token", loginResponse.getToken());
+        Assertions.assertEquals("refresh-token", loginResponse.getRefreshToken());
+        Assertions.assertNull(loginResponse.getSignedToken());
+    }
+
+    @Test
+    @DisplayName("Refresh builds the tokens from the cached user")
+    void refresh_cachedUser() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("renamed")
+                .authorities(List.of("user", "admin"))
+                .build();
+        User user = userMapper.map(eUser);
+
+        Mockito.when(refreshTokenStore.rotate("refresh-token"))
+                .thenReturn(session(id));
+        Mockito.when(userService.findCachedEntityById(id))
+                .thenReturn(eUser);
+        Mockito.when(jwtService.buildJwt(user))
+                .thenReturn("token");
+        Mockito.when(tokenSigner.isEnabled())
+                .thenReturn(true);
+        Mockito.when(tokenSigner.sign(eUser))
+                .thenReturn("signed-token");
+
+        LoginResponse loginResponse = authorizationService.refresh("refresh-token");
+
+        Mockito.verify(revocationSet).isRevoked(id);
+        Assertions.assertEquals(user, loginResponse.getUser());
+        Assertions.assertEquals("token", loginResponse.getToken());
+        Assertions.assertEquals("signed-token", loginResponse.getSignedToken());
+        Assertions.assertEquals("rotated-token", loginResponse.getRefreshToken());
+        Mockito.verify(userService, Mockito.never()).findEntityById(id);
+        Mockito.verify(userService, Mockito.never()).findViewById(id);
+    }
+
+    @Test
+    @DisplayName("Refresh builds the tokens from the session snapshot when the user isn't cached")
+    void refresh_snapshot() {
+        UUID id = UUID.randomUUID();
+        User user = User
+                .builder()
+                .id(id)
+                .name("name")
+                .build();
+        RefreshTokenStore.Session session = new RefreshTokenStore.Session(UUID.randomUUID(), id, user,
+                List.of("user", "admin"), "rotated-token");
+        ArgumentCaptor<EUser> argumentCaptor = ArgumentCaptor.forClass(EUser.class);
+
+        Mockito.when(refreshTokenStore.rotate("refresh-token"))
+                .thenReturn(session);
+        Mockito.when(jwtService.buildJwt(user))
+                .thenReturn("token");
+        Mockito.when(tokenSigner.isEnabled())
+                .thenReturn(true);
+        Mockito.when(tokenSigner.sign(argumentCaptor.capture()))
+                .thenReturn("signed-token");
+
+        LoginResponse loginResponse = authorizationService.refresh("refresh-token");
+
+        Mockito.verify(userService, Mockito.never()).findEntityById(id);
+        Mockito.verify(userService, Mockito.never()).findViewById(id);
+        Assertions.assertEquals(user, loginResponse.getUser());
+        Assertions.assertEquals("signed-token", loginResponse.getSignedToken());
+        Assertions.assertEquals(List.of("user", "admin"), argumentCaptor.getValue().getAuthorities());
+    }
+
+    @Test
+    @DisplayName("Refresh of a banned user revokes the session")
+    void refresh_userBanned() {
+        UUID id = UUID.randomUUID();
+        RefreshTokenStore.Session session = session(id);
+
+        Mockito.when(refreshTokenStore.rotate("refresh-token"))
+                .thenReturn(session);
+        Mockito.when(revocationSet.isRevoked(id))
+                .thenReturn(true);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> authorizationService.refresh("refresh-token"));
+
+        Mockito.verify(refreshTokenStore).revoke(session);
+        Mockito.verifyNoInteractions(userService, jwtService);
+        Assertions.assertEquals("user-blocked", exception.getError().getKey());
+    }
+
+    @Test
+    @DisplayName("Refresh of a user banned outside the revocation set revokes the session")
+    void refresh_userBannedOnEntity() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("name")
+                .banExpiration(LocalDateTime.now().plusMinutes(30))
+                .build();
+        RefreshTokenStore.Session session = session(id);
+
+        Mockito.when(refreshTokenStore.rotate("refresh-token"))
+                .thenReturn(session);
+        Mockito.when(userService.findCachedEntityById(id))
+                .thenReturn(eUser);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> authorizationService.refresh("refresh-token"));
+
+        Mockito.verify(userService).evictUserCache(eUser);
+        Mockito.verify(refreshTokenStore).revoke(session);
+        Assertions.assertEquals("user-blocked", exception.getError().getKey());
+    }
+
+    private static RefreshTokenStore.Session session(UUID id) {
+        return new RefreshTokenStore.Session(UUID.randomUUID(), id, null, List.of(), "rotated-token");
     }
 
 }
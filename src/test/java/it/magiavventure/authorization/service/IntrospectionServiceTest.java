@@ -0,0 +1,83 @@
+package it.magiavventure.authorization.service;
+
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.model.Introspection;
+import it.magiavventure.authorization.token.TokenVerifier;
+import it.magiavventure.mongo.entity.EUser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Introspection service tests")
+class IntrospectionServiceTest {
+
+    @InjectMocks
+    private IntrospectionService introspectionService;
+
+    @Mock
+    private TokenVerifier tokenVerifier;
+    @Mock
+    private UserService userService;
+    @Mock
+    private RevocationSet revocationSet;
+
+    @Test
+    @DisplayName("Introspect tokens of active, banned and unknown users and invalid tokens")
+    void introspectAll_ok() {
+        EUser active = EUser.builder().id(UUID.randomUUID()).authorities(List.of("user")).build();
+        EUser banned = EUser.builder().id(UUID.randomUUID()).authorities(List.of("user", "admin")).build();
+        UUID unknown = UUID.randomUUID();
+
+        Mockito.when(tokenVerifier.verifiedUserId("active")).thenReturn(active.getId());
+        Mockito.when(tokenVerifier.verifiedUserId("banned")).thenReturn(banned.getId());
+        Mockito.when(tokenVerifier.verifiedUserId("unknown")).thenReturn(unknown);
+        Mockito.when(tokenVerifier.verifiedUserId("invalid")).thenReturn(null);
+        Mockito.when(userService.findEntitiesByIds(List.of(active.getId(), banned.getId(), unknown)))
+                .thenReturn(Map.of(active.getId(), active, banned.getId(), banned));
+        Mockito.when(revocationSet.isRevoked(active.getId())).thenReturn(false);
+        Mockito.when(revocationSet.isRevoked(banned.getId())).thenReturn(true);
+
+        List<Introspection> introspections = introspectionService.introspectAll(
+                List.of("active", "banned", "unknown", "invalid", "active"));
+
+        Introspection activeIntrospection = new Introspection(true, false, List.of("user"));
+        Assertions.assertIterableEquals(List.of(
+                activeIntrospection,
+                new Introspection(false, true, List.of("user", "admin")),
+                Introspection.builder().active(false).build(),
+                Introspection.builder().active(false).build(),
+                activeIntrospection), introspections);
+    }
+
+    @Test
+    @DisplayName("Introspect token of a banned user missing from the revocation set")
+    void introspect_bannedOnEntity() {
+        EUser banned = EUser
+                .builder()
+                .id(UUID.randomUUID())
+                .authorities(List.of("user"))
+                .banExpiration(LocalDateTime.now().plusHours(1))
+                .build();
+
+        Mockito.when(tokenVerifier.verifiedUserId("token")).thenReturn(banned.getId());
+        Mockito.when(userService.findEntitiesByIds(List.of(banned.getId())))
+                .thenReturn(Map.of(banned.getId(), banned));
+        Mockito.when(revocationSet.isRevoked(banned.getId())).thenReturn(false);
+
+        Introspection introspection = introspectionService.introspect("token");
+
+        Assertions.assertFalse(introspection.isActive());
+        Assertions.assertTrue(introspection.getBanned());
+    }
+}
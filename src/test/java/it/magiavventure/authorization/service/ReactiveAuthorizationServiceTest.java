@@ -0,0 +1,91 @@
+package it.magiavventure.authorization.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.authorization.token.TokenSigner;
+import it.magiavventure.common.error.MagiavventureException;
+import it.magiavventure.jwt.service.JwtService;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Reactive authorization service tests")
+class ReactiveAuthorizationServiceTest {
+
+    @InjectMocks
+    private ReactiveAuthorizationService reactiveAuthorizationService;
+    @Mock
+    private JwtService jwtService;
+    @Mock
+    private ReactiveUserService reactiveUserService;
+    @Mock
+    private RevocationSet revocationSet;
+    @Mock
+    private TokenSigner tokenSigner;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+
+    @Test
+    @DisplayName("Reactive login by id successfull")
+    void loginById_ok() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser.builder().id(id).name("name").build();
+        User user = userMapper.map(eUser);
+
+        Mockito.when(reactiveUserService.findEntityById(id)).thenReturn(Mono.just(eUser));
+        Mockito.when(reactiveUserService.findViewById(id)).thenReturn(Mono.just(user));
+        Mockito.when(jwtService.buildJwt(user)).thenReturn("token");
+
+        StepVerifier.create(reactiveAuthorizationService.loginById(id))
+                .assertNext(loginResponse -> {
+                    Assertions.assertEquals("token", loginResponse.getToken());
+                    Assertions.assertEquals(user, loginResponse.getUser());
+                })
+                .verifyComplete();
+
+        Assertions.assertEquals(1, meterRegistry.timer("authorization.jwt.build").count());
+    }
+
+    @Test
+    @DisplayName("Reactive login by id but user is banned")
+    void loginById_userBanned() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("name")
+                .banExpiration(LocalDateTime.now().plusMinutes(30))
+                .build();
+
+        Mockito.when(reactiveUserService.findEntityById(id)).thenReturn(Mono.just(eUser));
+        Mockito.when(reactiveUserService.evictUserCache(eUser)).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveAuthorizationService.loginById(id))
+                .expectErrorSatisfies(error -> Assertions.assertEquals("user-blocked",
+                        ((MagiavventureException) error).getError().getKey()))
+                .verify();
+
+        Mockito.verify(reactiveUserService).evictUserCache(eUser);
+        Mockito.verify(reactiveUserService, Mockito.never()).findViewById(id);
+        Mockito.verifyNoInteractions(jwtService);
+        Assertions.assertEquals(1, meterRegistry.counter("authorization.login.rejections", "reason", "banned").count());
+    }
+}
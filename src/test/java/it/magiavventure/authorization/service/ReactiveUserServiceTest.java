@@ -0,0 +1,177 @@
+package it.magiavventure.authorization.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.cache.UserListCache;
+import it.magiavventure.authorization.cache.UserNameFilter;
+import it.magiavventure.authorization.cache.UserPageGeneration;
+import it.magiavventure.authorization.cache.UserTombstones;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.authorization.model.CreateUser;
+import it.magiavventure.authorization.repository.ReactiveUserQueryRepository;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.common.error.MagiavventureException;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.DuplicateKeyException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Reactive user service tests")
+class ReactiveUserServiceTest {
+
+    @Mock
+    private ReactiveUserQueryRepository reactiveUserQueryRepository;
+    @Mock
+    private UserQueryRepository userQueryRepository;
+    @Mock
+    private UserListCache userListCache;
+    @Mock
+    private UserNameFilter userNameFilter;
+    @Mock
+    private UserPageGeneration userPageGeneration;
+    @Captor
+    private ArgumentCaptor<EUser> eUserArgumentCaptor;
+    private final UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+    private final ConcurrentMapCacheManager cacheManager =
+            new ConcurrentMapCacheManager("user", "user_view", "users", "users_page", "user_tombstone");
+    private ReactiveUserService reactiveUserService;
+
+    @BeforeEach
+    void setUp() {
+        AuthorizationProperties authorizationProperties = new AuthorizationProperties();
+        authorizationProperties.getCache().getTombstone().setEnabled(true);
+        reactiveUserService = new ReactiveUserService(reactiveUserQueryRepository, userQueryRepository, userMapper,
+                cacheManager, userListCache, userNameFilter,
+                new UserTombstones(cacheManager, authorizationProperties, new SimpleMeterRegistry()),
+                userPageGeneration);
+    }
+
+    @Test
+    @DisplayName("Create user with name index updates the users caches and the name filter")
+    void createUser_ok() {
+        CreateUser createUser = CreateUser.builder().name("name").avatar("avatar").build();
+        Mockito.when(userQueryRepository.isNameIndexed()).thenReturn(true);
+        Mockito.when(reactiveUserQueryRepository.insert(eUserArgumentCaptor.capture()))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(reactiveUserService.createUser(createUser))
+                .assertNext(user -> {
+                    Assertions.assertEquals("name", user.getName());
+                    Assertions.assertEquals(eUserArgumentCaptor.getValue().getId(), user.getId());
+                })
+                .verifyComplete();
+
+        Mockito.verify(userListCache).insert(Mockito.any(User.class));
+        Mockito.verify(userNameFilter).add("name");
+        Mockito.verifyNoMoreInteractions(userNameFilter);
+        Mockito.verify(userPageGeneration).next();
+        Assertions.assertEquals(List.of("user"), eUserArgumentCaptor.getValue().getAuthorities());
+    }
+
+    @Test
+    @DisplayName("Create user with duplicated name fails with user exists")
+    void createUser_duplicateKey() {
+        CreateUser createUser = CreateUser.builder().name("name").avatar("avatar").build();
+        Mockito.when(userQueryRepository.isNameIndexed()).thenReturn(true);
+        Mockito.when(reactiveUserQueryRepository.insert(Mockito.any(EUser.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("duplicate")));
+
+        StepVerifier.create(reactiveUserService.createUser(createUser))
+                .expectErrorSatisfies(error -> Assertions.assertEquals("user-exists",
+                        ((MagiavventureException) error).getError().getKey()))
+                .verify();
+
+        Mockito.verifyNoInteractions(userListCache);
+    }
+
+    @Test
+    @DisplayName("Check existing user name fails with user exists")
+    void checkIfUserExists_exists() {
+        Mockito.when(userNameFilter.mightContain("name")).thenReturn(true);
+        Mockito.when(reactiveUserQueryRepository.existsByName("name")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(reactiveUserService.checkIfUserExists("name"))
+                .expectErrorSatisfies(error -> Assertions.assertEquals("user-exists",
+                        ((MagiavventureException) error).getError().getKey()))
+                .verify();
+
+        Mockito.verify(userNameFilter).recordLookup(true);
+    }
+
+    @Test
+    @DisplayName("Check user name not in the name filter skips the query")
+    void checkIfUserExists_filtered() {
+        Mockito.when(userNameFilter.mightContain("name")).thenReturn(false);
+
+        StepVerifier.create(reactiveUserService.checkIfUserExists("name"))
+                .verifyComplete();
+
+        Mockito.verifyNoInteractions(reactiveUserQueryRepository);
+    }
+
+    @Test
+    @DisplayName("Find entity by id is loaded once and then served by the cache")
+    void findEntityById_cached() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser.builder().id(id).name("name").build();
+        Mockito.when(reactiveUserQueryRepository.findById(id)).thenReturn(Mono.just(eUser));
+
+        StepVerifier.create(reactiveUserService.findEntityById(id)).expectNext(eUser).verifyComplete();
+        StepVerifier.create(reactiveUserService.findEntityById(id)).expectNext(eUser).verifyComplete();
+
+        Mockito.verify(reactiveUserQueryRepository, Mockito.times(1)).findById(id);
+    }
+
+    @Test
+    @DisplayName("Find entity by id of a missing user fails with user not found and remembers the missing id")
+    void findEntityById_notFound() {
+        UUID id = UUID.randomUUID();
+        Mockito.when(reactiveUserQueryRepository.findById(id)).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveUserService.findEntityById(id))
+                .expectErrorSatisfies(error -> Assertions.assertEquals("user-not-found",
+                        ((MagiavventureException) error).getError().getKey()))
+                .verify();
+        StepVerifier.create(reactiveUserService.findEntityById(id))
+                .expectErrorSatisfies(error -> Assertions.assertEquals("user-not-found",
+                        ((MagiavventureException) error).getError().getKey()))
+                .verify();
+
+        Mockito.verify(reactiveUserQueryRepository, Mockito.times(1)).findById(id);
+    }
+
+    @Test
+    @DisplayName("Find view by id maps the entity and evict user cache removes both, keeping the users list")
+    void findViewById_andEvict() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser.builder().id(id).name("name").avatar("avatar").build();
+        Mockito.when(reactiveUserQueryRepository.findById(id)).thenReturn(Mono.just(eUser));
+
+        StepVerifier.create(reactiveUserService.findViewById(id))
+                .assertNext(user -> Assertions.assertEquals("name", user.getName()))
+                .verifyComplete();
+        cacheManager.getCache("users").put("all", List.of());
+        StepVerifier.create(reactiveUserService.evictUserCache(eUser)).verifyComplete();
+
+        Assertions.assertNull(cacheManager.getCache("user").get(id));
+        Assertions.assertNull(cacheManager.getCache("user_view").get(id));
+        Assertions.assertNotNull(cacheManager.getCache("users").get("all"));
+    }
+}
@@ -1,9 +1,23 @@
 package it.magiavventure.authorization.service;
 
+import it.magiavventure.authorization.cache.BanExpiredEvent;
+import it.magiavventure.authorization.cache.RevocationSet;
+import it.magiavventure.authorization.cache.UserBatchCache;
+import it.magiavventure.authorization.cache.UserListCache;
+import it.magiavventure.authorization.cache.UserNameFilter;
+import it.magiavventure.authorization.cache.UserPageGeneration;
+import it.magiavventure.authorization.cache.UserTombstones;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
 import it.magiavventure.authorization.mapper.UserMapper;
+import it.magiavventure.authorization.model.Ban;
 import it.magiavventure.authorization.model.BanUser;
+import it.magiavventure.authorization.model.BanUsers;
 import it.magiavventure.authorization.model.CreateUser;
 import it.magiavventure.authorization.model.UpdateUser;
+import it.magiavventure.authorization.model.UserIds;
+import it.magiavventure.authorization.model.UserPage;
+import it.magiavventure.authorization.repository.UserQueryRepository;
+import it.magiavventure.authorization.token.RefreshTokenStore;
 import it.magiavventure.common.error.MagiavventureException;
 import it.magiavventure.jwt.service.OwnershipService;
 import it.magiavventure.mongo.entity.EUser;
@@ -17,14 +31,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mapstruct.factory.Mappers;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @ExtendWith(MockitoExtension.class)
 @DisplayName("User service tests")
@@ -37,12 +54,30 @@ class UserServiceTest {
     private OwnershipService ownershipService;
     @Mock
     private UserRepository userRepository;
+    @Mock
+    private UserListCache userListCache;
+    @Mock
+    private UserNameFilter userNameFilter;
+    @Mock
+    private UserQueryRepository userQueryRepository;
+    @Mock
+    private RevocationSet revocationSet;
+    @Mock
+    private UserBatchCache userBatchCache;
+    @Mock
+    private UserTombstones userTombstones;
+    @Mock
+    private UserPageGeneration userPageGeneration;
+    @Mock
+    private RefreshTokenStore refreshTokenStore;
+    @Spy
+    private AuthorizationProperties authorizationProperties = new AuthorizationProperties();
     @Spy
     private UserMapper userMapper = Mappers.getMapper(UserMapper.class);
     @Captor
     ArgumentCaptor<EUser> eUserArgumentCaptor;
     @Captor
-    ArgumentCaptor<Example<EUser>> exampleArgumentCaptor;
+    ArgumentCaptor<String> nameArgumentCaptor;
     @Captor
     ArgumentCaptor<Sort> sortArgumentCaptor;
     @Test
@@ -70,16 +105,20 @@ class UserServiceTest {
 
         Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
                 .thenReturn(eUser);
-        Mockito.when(userRepository.exists(exampleArgumentCaptor.capture()))
+        Mockito.when(userNameFilter.mightContain(Mockito.anyString()))
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.existsByName(nameArgumentCaptor.capture()))
                 .thenReturn(false);
 
         User user = userService.createUser(createUser);
 
         Mockito.verify(userRepository).save(eUserArgumentCaptor.capture());
-        Mockito.verify(userRepository).exists(exampleArgumentCaptor.capture());
+        Mockito.verify(userQueryRepository).existsByName(nameArgumentCaptor.capture());
+        Mockito.verify(userListCache).insert(user);
+        Mockito.verify(userTombstones).remove(Mockito.any(UUID.class));
 
         EUser userCapt = eUserArgumentCaptor.getValue();
-        Example<EUser> example = exampleArgumentCaptor.getValue();
+        String name = nameArgumentCaptor.getValue();
 
         Assertions.assertNotNull(user);
         Assertions.assertEquals(createUser.getName(), user.getName());
@@ -90,7 +129,7 @@ class UserServiceTest {
         Assertions.assertIterableEquals(userCapt.getPreferredCategories(), user.getPreferredCategories());
         Assertions.assertIterableEquals(userCapt.getAuthorities(), List.of("user"));
         Assertions.assertNotNull(userCapt.getId());
-        Assertions.assertEquals(createUser.getName(), example.getProbe().getName());
+        Assertions.assertEquals(createUser.getName(), name);
     }
 
     @Test
@@ -109,20 +148,113 @@ class UserServiceTest {
                 .preferredCategories(categories)
                 .build();
 
-        Mockito.when(userRepository.exists(exampleArgumentCaptor.capture()))
+        Mockito.when(userNameFilter.mightContain(Mockito.anyString()))
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.existsByName(nameArgumentCaptor.capture()))
                 .thenReturn(true);
 
         MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
                 () -> userService.createUser(createUser));
 
-        Mockito.verify(userRepository).exists(exampleArgumentCaptor.capture());
-        Example<EUser> example = exampleArgumentCaptor.getValue();
+        Mockito.verify(userQueryRepository).existsByName(nameArgumentCaptor.capture());
+        String name = nameArgumentCaptor.getValue();
 
-        Assertions.assertEquals(createUser.getName(), example.getProbe().getName());
+        Assertions.assertEquals(createUser.getName(), name);
         Assertions.assertEquals("user-exists", exception.getError().getKey());
         Assertions.assertEquals(1, exception.getError().getArgs().length);
     }
 
+    @Test
+    @DisplayName("Create user relying on unique name index")
+    void createUser_ok_nameIndexed() {
+        CreateUser createUser = CreateUser
+                .builder()
+                .name("test")
+                .avatar("avatar")
+                .build();
+        EUser eUser = EUser
+                .builder()
+                .id(UUID.randomUUID())
+                .name("test")
+                .avatar("avatar")
+                .build();
+
+        Mockito.when(userQueryRepository.isNameIndexed())
+                .thenReturn(true);
+        Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
+                .thenReturn(eUser);
+
+        User user = userService.createUser(createUser);
+
+        Mockito.verify(userRepository).save(eUserArgumentCaptor.capture());
+        Mockito.verify(userQueryRepository, Mockito.never()).existsByName(Mockito.anyString());
+
+        Assertions.assertNotNull(user);
+        Assertions.assertEquals(createUser.getName(), user.getName());
+    }
+
+    @Test
+    @DisplayName("Create user with name that already exists rejected by unique name index")
+    void createUser_ko_duplicateKey() {
+        CreateUser createUser = CreateUser
+                .builder()
+                .name("test")
+                .avatar("avatar")
+                .build();
+
+        Mockito.when(userQueryRepository.isNameIndexed())
+                .thenReturn(true);
+        Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
+                .thenThrow(new DuplicateKeyException("duplicate key"));
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.createUser(createUser));
+
+        Mockito.verify(userQueryRepository, Mockito.never()).existsByName(Mockito.anyString());
+        Mockito.verifyNoInteractions(userListCache);
+
+        Assertions.assertEquals("user-exists", exception.getError().getKey());
+        Assertions.assertIterableEquals(List.of("test"), Arrays.asList(exception.getError().getArgs()));
+    }
+
+    @Test
+    @DisplayName("Check user name that already exists")
+    void checkIfUserExists_ko() {
+        Mockito.when(userNameFilter.mightContain(Mockito.anyString()))
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.existsByName("Test"))
+                .thenReturn(true);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.checkIfUserExists("Test"));
+
+        Assertions.assertEquals("user-exists", exception.getError().getKey());
+        Assertions.assertIterableEquals(List.of("Test"), Arrays.asList(exception.getError().getArgs()));
+        Assertions.assertEquals(0, exception.getStackTrace().length);
+    }
+
+    @Test
+    @DisplayName("Check user name excluded by name filter without querying database")
+    void checkIfUserExists_ok_filteredOut() {
+        Mockito.when(userNameFilter.mightContain("Test"))
+                .thenReturn(false);
+
+        Assertions.assertDoesNotThrow(() -> userService.checkIfUserExists("Test"));
+
+        Mockito.verifyNoInteractions(userQueryRepository);
+    }
+
+    @Test
+    @DisplayName("Check user name that not exists")
+    void checkIfUserExists_ok() {
+        Mockito.when(userNameFilter.mightContain(Mockito.anyString()))
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.existsByName("Test"))
+                .thenReturn(false);
+
+        Assertions.assertDoesNotThrow(() -> userService.checkIfUserExists("Test"));
+    }
+
     @Test
     @DisplayName("Update user with name that not exists")
     void updateUser_ok_nameNotExists() {
@@ -147,40 +279,39 @@ class UserServiceTest {
                 .avatar("avatar")
                 .preferredCategories(categories)
                 .build();
-        EUser eUserUpdated = EUser
-                .builder()
-                .id(id)
-                .name("test 2")
-                .avatar("avatar")
-                .preferredCategories(categories)
-                .build();
 
         Mockito.doNothing().when(ownershipService).validateOwnership(id);
-        Mockito.when(self.findEntityById(id))
-                .thenReturn(eUser);
-        Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
-                .thenReturn(eUserUpdated);
-        Mockito.when(userRepository.exists(exampleArgumentCaptor.capture()))
+        Mockito.when(userNameFilter.mightContain(Mockito.anyString()))
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.existsByName(nameArgumentCaptor.capture(), Mockito.eq(id)))
                 .thenReturn(false);
+        Mockito.when(userBatchCache.getUsers(List.of(id)))
+                .thenReturn(Map.of(id, eUser));
+        Mockito.when(userQueryRepository.updateProfile(id, null, "test 2", "avatar", categories))
+                .thenReturn(EUser
+                        .builder()
+                        .id(id)
+                        .name("test 2")
+                        .avatar("avatar")
+                        .preferredCategories(categories)
+                        .build());
 
         User user = userService.updateUser(updateUser);
 
         Mockito.verify(ownershipService).validateOwnership(id);
-        Mockito.verify(self).findEntityById(id);
-        Mockito.verify(userRepository).save(eUserArgumentCaptor.capture());
-        Mockito.verify(userRepository).exists(exampleArgumentCaptor.capture());
-        EUser userCapt = eUserArgumentCaptor.getValue();
-        Example<EUser> example = exampleArgumentCaptor.getValue();
+        Mockito.verify(userQueryRepository).updateProfile(id, null, "test 2", "avatar", categories);
+        Mockito.verify(userQueryRepository).existsByName(nameArgumentCaptor.capture(), Mockito.eq(id));
+        Mockito.verify(userListCache).replace(user);
+        Mockito.verify(userNameFilter).add("test 2");
+        Mockito.verify(userNameFilter).markStale();
+        Mockito.verifyNoInteractions(userRepository, self);
+        String name = nameArgumentCaptor.getValue();
 
         Assertions.assertNotNull(user);
         Assertions.assertEquals(updateUser.getName(), user.getName());
         Assertions.assertEquals(updateUser.getAvatar(), user.getAvatar());
         Assertions.assertIterableEquals(updateUser.getPreferredCategories(), user.getPreferredCategories());
-        Assertions.assertEquals(updateUser.getName(), userCapt.getName());
-        Assertions.assertEquals(updateUser.getAvatar(), userCapt.getAvatar());
-        Assertions.assertIterableEquals(updateUser.getPreferredCategories(), userCapt.getPreferredCategories());
-        Assertions.assertNotNull(userCapt.getId());
-        Assertions.assertEquals(updateUser.getName(), example.getProbe().getName());
+        Assertions.assertEquals(updateUser.getName(), name);
     }
 
     @Test
@@ -199,6 +330,7 @@ class UserServiceTest {
                 .name("test")
                 .avatar("avatar")
                 .preferredCategories(categories)
+                .version(3L)
                 .build();
         EUser eUser = EUser
                 .builder()
@@ -207,35 +339,105 @@ class UserServiceTest {
                 .avatar("avatar")
                 .preferredCategories(categories)
                 .build();
-        EUser eUserUpdated = EUser
-                .builder()
-                .id(id)
-                .name("test")
-                .avatar("avatar")
-                .preferredCategories(categories)
-                .build();
 
         Mockito.doNothing().when(ownershipService).validateOwnership(id);
-        Mockito.when(self.findEntityById(id))
+        Mockito.when(userQueryRepository.isNameIndexed())
+                .thenReturn(true);
+        Mockito.when(userBatchCache.getUsers(List.of(id)))
+                .thenReturn(Map.of(id, eUser));
+        Mockito.when(userQueryRepository.updateProfile(id, 3L, "test", "avatar", categories))
                 .thenReturn(eUser);
-        Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
-                .thenReturn(eUserUpdated);
 
         User user = userService.updateUser(updateUser);
 
         Mockito.verify(ownershipService).validateOwnership(id);
-        Mockito.verify(self).findEntityById(id);
-        Mockito.verify(userRepository).save(eUserArgumentCaptor.capture());
-        EUser userCapt = eUserArgumentCaptor.getValue();
+        Mockito.verify(userQueryRepository).updateProfile(id, 3L, "test", "avatar", categories);
+        Mockito.verify(userQueryRepository, Mockito.never()).existsByName(Mockito.anyString(), Mockito.any());
+        Mockito.verify(userListCache).replace(user);
+        Mockito.verifyNoInteractions(userNameFilter, userRepository, self);
 
         Assertions.assertNotNull(user);
         Assertions.assertEquals(updateUser.getName(), user.getName());
         Assertions.assertEquals(updateUser.getAvatar(), user.getAvatar());
         Assertions.assertIterableEquals(updateUser.getPreferredCategories(), user.getPreferredCategories());
-        Assertions.assertEquals(updateUser.getName(), userCapt.getName());
-        Assertions.assertEquals(updateUser.getAvatar(), userCapt.getAvatar());
-        Assertions.assertIterableEquals(updateUser.getPreferredCategories(), userCapt.getPreferredCategories());
-        Assertions.assertNotNull(userCapt.getId());
+    }
+
+    @Test
+    @DisplayName("Update user changed by a concurrent request")
+    void updateUser_ko_conflict() {
+        UUID id = UUID.randomUUID();
+        UpdateUser updateUser = UpdateUser
+                .builder()
+                .id(id)
+                .name("test")
+                .avatar("avatar")
+                .version(3L)
+                .build();
+
+        Mockito.doNothing().when(ownershipService).validateOwnership(id);
+        Mockito.when(userQueryRepository.isNameIndexed())
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.updateProfile(id, 3L, "test", "avatar", null))
+                .thenReturn(null);
+        Mockito.when(userQueryRepository.existsById(id))
+                .thenReturn(true);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.updateUser(updateUser));
+
+        Mockito.verifyNoInteractions(userListCache, userNameFilter);
+        Assertions.assertEquals("user-conflict", exception.getError().getKey());
+        Assertions.assertEquals(id.toString(), exception.getError().getArgs()[0]);
+    }
+
+    @Test
+    @DisplayName("Update user not found")
+    void updateUser_ko_notFound() {
+        UUID id = UUID.randomUUID();
+        UpdateUser updateUser = UpdateUser
+                .builder()
+                .id(id)
+                .name("test")
+                .avatar("avatar")
+                .version(3L)
+                .build();
+
+        Mockito.doNothing().when(ownershipService).validateOwnership(id);
+        Mockito.when(userQueryRepository.isNameIndexed())
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.updateProfile(id, 3L, "test", "avatar", null))
+                .thenReturn(null);
+        Mockito.when(userQueryRepository.existsById(id))
+                .thenReturn(false);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.updateUser(updateUser));
+
+        Assertions.assertEquals("user-not-found", exception.getError().getKey());
+    }
+
+    @Test
+    @DisplayName("Update user with name taken rejected by unique name index")
+    void updateUser_ko_duplicateKey() {
+        UUID id = UUID.randomUUID();
+        UpdateUser updateUser = UpdateUser
+                .builder()
+                .id(id)
+                .name("taken")
+                .avatar("avatar")
+                .build();
+
+        Mockito.doNothing().when(ownershipService).validateOwnership(id);
+        Mockito.when(userQueryRepository.isNameIndexed())
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.updateProfile(id, null, "taken", "avatar", null))
+                .thenThrow(new DuplicateKeyException("duplicate"));
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.updateUser(updateUser));
+
+        Assertions.assertEquals("user-exists", exception.getError().getKey());
+        Assertions.assertEquals("taken", exception.getError().getArgs()[0]);
     }
 
     @Test
@@ -264,22 +466,23 @@ class UserServiceTest {
                 .build();
 
         Mockito.doNothing().when(ownershipService).validateOwnership(id);
-        Mockito.when(self.findEntityById(id))
-                .thenReturn(eUser);
-        Mockito.when(userRepository.exists(exampleArgumentCaptor.capture()))
+        Mockito.when(userNameFilter.mightContain(Mockito.anyString()))
+                .thenReturn(true);
+        Mockito.when(userQueryRepository.existsByName(nameArgumentCaptor.capture(), Mockito.eq(id)))
                 .thenReturn(true);
 
         MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
                 () -> userService.updateUser(updateUser));
 
         Mockito.verify(ownershipService).validateOwnership(id);
-        Mockito.verify(self).findEntityById(id);
-        Mockito.verify(userRepository).exists(exampleArgumentCaptor.capture());
-        Example<EUser> example = exampleArgumentCaptor.getValue();
+        Mockito.verify(userQueryRepository, Mockito.never())
+                .updateProfile(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        Mockito.verify(userQueryRepository).existsByName(nameArgumentCaptor.capture(), Mockito.eq(id));
+        String name = nameArgumentCaptor.getValue();
 
         Assertions.assertEquals("user-exists", exception.getError().getKey());
         Assertions.assertEquals(1, exception.getError().getArgs().length);
-        Assertions.assertEquals(updateUser.getName(), example.getProbe().getName());
+        Assertions.assertEquals(updateUser.getName(), name);
     }
 
     @Test
@@ -300,14 +503,45 @@ class UserServiceTest {
                 .preferredCategories(categories)
                 .build();
 
+        User view = userMapper.map(eUser);
+
         Mockito.doNothing().when(ownershipService).validateOwnership(id);
-        Mockito.when(self.findEntityById(id))
-                .thenReturn(eUser);
+        Mockito.when(self.findViewById(id))
+                .thenReturn(view);
 
         User user = userService.findById(id);
 
         Mockito.verify(ownershipService).validateOwnership(id);
-        Mockito.verify(self).findEntityById(id);
+        Mockito.verify(self).findViewById(id);
+        Mockito.verify(self, Mockito.never()).findEntityById(id);
+
+        Assertions.assertSame(view, user);
+    }
+
+    @Test
+    @DisplayName("Find user view by id maps the entity loaded from the repository")
+    void findViewById_ok() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("test")
+                .avatar("avatar")
+                .preferredCategories(List.of(Category
+                        .builder()
+                        .id(UUID.randomUUID())
+                        .name("category")
+                        .background("background")
+                        .build()))
+                .build();
+
+        Mockito.when(userRepository.findById(id))
+                .thenReturn(Optional.of(eUser));
+
+        User user = userService.findViewById(id);
+
+        Mockito.verify(userRepository).findById(id);
+        Mockito.verifyNoInteractions(self);
 
         Assertions.assertNotNull(user);
         Assertions.assertEquals(eUser.getName(), user.getName());
@@ -378,6 +612,8 @@ class UserServiceTest {
         Mockito.verify(ownershipService).validateOwnership(id);
         Mockito.verify(self).findEntityById(id);
         Mockito.verify(userRepository).deleteById(id);
+        Mockito.verify(userListCache).remove(id);
+        Mockito.verify(refreshTokenStore).revokeAll(id);
     }
 
     @Test
@@ -424,12 +660,28 @@ class UserServiceTest {
                 () -> userService.findEntityById(id));
 
         Mockito.verify(userRepository).findById(id);
+        Mockito.verify(userTombstones).add(id);
 
         Assertions.assertNotNull(exception);
         Assertions.assertEquals("user-not-found", exception.getError().getKey());
         Assertions.assertIterableEquals(List.of(id.toString()), Arrays.asList(exception.getError().getArgs()));
     }
 
+    @Test
+    @DisplayName("Find entity by id of a known missing user without querying database")
+    void findEntityById_tombstone() {
+        UUID id = UUID.randomUUID();
+
+        Mockito.when(userTombstones.contains(id))
+                .thenReturn(true);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.findEntityById(id));
+
+        Mockito.verifyNoInteractions(userRepository);
+        Assertions.assertEquals("user-not-found", exception.getError().getKey());
+    }
+
     @Test
     @DisplayName("Given id and ban duration ban user for this period")
     void givenIdAndBanDuration_banUser_ok() {
@@ -449,25 +701,23 @@ class UserServiceTest {
                 .preferredCategories(categories)
                 .build();
 
-        Mockito.when(self.findEntityById(id))
-                .thenReturn(eUser);
-        Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
+        ArgumentCaptor<LocalDateTime> banExpirationCaptor = ArgumentCaptor.forClass(LocalDateTime.class);
+        Mockito.when(userQueryRepository.ban(Mockito.eq(id), banExpirationCaptor.capture()))
                 .thenReturn(eUser);
 
         User user = userService.banUser(id, banUser);
 
-        Mockito.verify(userRepository).save(eUserArgumentCaptor.capture());
-        Mockito.verify(self).findEntityById(id);
+        Mockito.verifyNoInteractions(userRepository, self);
+        Mockito.verify(userListCache).replace(user);
 
         Assertions.assertNotNull(user);
         Assertions.assertEquals(eUser.getId(), user.getId());
         Assertions.assertEquals(eUser.getName(), user.getName());
         Assertions.assertEquals(eUser.getAvatar(), user.getAvatar());
         Assertions.assertIterableEquals(eUser.getPreferredCategories(), user.getPreferredCategories());
-        EUser userCaptured = eUserArgumentCaptor.getValue();
-        Assertions.assertNotNull(userCaptured);
-        Assertions.assertEquals(LocalDateTime.now().plusMinutes(5).getMinute(),
-                userCaptured.getBanExpiration().getMinute());
+        LocalDateTime banExpiration = banExpirationCaptor.getValue();
+        Assertions.assertEquals(LocalDateTime.now().plusMinutes(5).getMinute(), banExpiration.getMinute());
+        Mockito.verify(revocationSet).revoke(id, banExpiration);
 
     }
 
@@ -489,27 +739,40 @@ class UserServiceTest {
                 .preferredCategories(categories)
                 .build();
 
-        Mockito.when(self.findEntityById(id))
-                .thenReturn(eUser);
-        Mockito.when(userRepository.save(eUserArgumentCaptor.capture()))
+        Mockito.when(userQueryRepository.grantAuthorities(id, List.of("user", "admin")))
                 .thenReturn(eUser);
 
         User user = userService.giveAdminAuthorityToUser(id);
 
-        Mockito.verify(userRepository).save(eUserArgumentCaptor.capture());
-        Mockito.verify(self).findEntityById(id);
+        Mockito.verify(userQueryRepository).grantAuthorities(id, List.of("user", "admin"));
+        Mockito.verifyNoInteractions(userRepository, self);
+        Mockito.verify(userListCache).replace(user);
+        Mockito.verify(userPageGeneration).next();
 
         Assertions.assertNotNull(user);
         Assertions.assertEquals(eUser.getId(), user.getId());
         Assertions.assertEquals(eUser.getName(), user.getName());
         Assertions.assertEquals(eUser.getAvatar(), user.getAvatar());
         Assertions.assertIterableEquals(eUser.getPreferredCategories(), user.getPreferredCategories());
-        EUser userCaptured = eUserArgumentCaptor.getValue();
-        Assertions.assertNotNull(userCaptured);
-        Assertions.assertIterableEquals(List.of("user","admin"), userCaptured.getAuthorities());
 
     }
 
+    @Test
+    @DisplayName("Given unknown id give admin authority to user not found")
+    void givenId_giveAdminAuthorityToUser_notFound() {
+        UUID id = UUID.randomUUID();
+
+        Mockito.when(userQueryRepository.grantAuthorities(id, List.of("user", "admin")))
+                .thenReturn(null);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.giveAdminAuthorityToUser(id));
+
+        Mockito.verify(userQueryRepository, Mockito.never()).existsById(id);
+        Mockito.verifyNoInteractions(userListCache);
+        Assertions.assertEquals("user-not-found", exception.getError().getKey());
+    }
+
     @Test
     @DisplayName("Evict user cache")
     void evictUserCache_ok() {
@@ -529,4 +792,200 @@ class UserServiceTest {
                 .build();
         Assertions.assertDoesNotThrow(() -> userService.evictUserCache(eUser));
     }
+
+    @Test
+    @DisplayName("Clear expired ban and replace user in cached list")
+    void clearExpiredBan_ok() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser
+                .builder()
+                .id(id)
+                .name("test")
+                .build();
+        Mockito.when(userQueryRepository.clearExpiredBan(Mockito.eq(id), Mockito.any(LocalDateTime.class)))
+                .thenReturn(eUser);
+
+        userService.clearExpiredBan(new BanExpiredEvent(id));
+
+        Mockito.verify(userListCache).replace(userMapper.map(eUser));
+        Mockito.verify(userPageGeneration).next();
+    }
+
+    @Test
+    @DisplayName("Clear ban already cleared by another node")
+    void clearExpiredBan_alreadyCleared() {
+        UUID id = UUID.randomUUID();
+        Mockito.when(userQueryRepository.clearExpiredBan(Mockito.eq(id), Mockito.any(LocalDateTime.class)))
+                .thenReturn(null);
+
+        userService.clearExpiredBan(new BanExpiredEvent(id));
+
+        Mockito.verifyNoInteractions(userListCache, userPageGeneration);
+    }
+
+    @Test
+    @DisplayName("Find users by ids reading the cached ones and loading the misses in one query")
+    void findByIds_ok() {
+        EUser cached = EUser.builder().id(UUID.randomUUID()).name("cached").build();
+        EUser loaded = EUser.builder().id(UUID.randomUUID()).name("loaded").build();
+        UUID unknown = UUID.randomUUID();
+        List<UUID> ids = List.of(loaded.getId(), cached.getId(), unknown, loaded.getId());
+        List<UUID> distinctIds = List.of(loaded.getId(), cached.getId(), unknown);
+
+        Mockito.when(userBatchCache.getUsers(distinctIds))
+                .thenReturn(Map.of(cached.getId(), cached));
+        Mockito.when(userRepository.findAllById(List.of(loaded.getId(), unknown)))
+                .thenReturn(List.of(loaded));
+
+        List<User> users = userService.findByIds(ids);
+
+        Mockito.verify(userBatchCache).putUsers(List.of(loaded));
+        Assertions.assertEquals(List.of("loaded", "cached"), users.stream().map(User::getName).toList());
+    }
+
+    @Test
+    @DisplayName("Find users by ids all cached without querying database")
+    void findByIds_allCached() {
+        EUser cached = EUser.builder().id(UUID.randomUUID()).name("cached").build();
+
+        Mockito.when(userBatchCache.getUsers(List.of(cached.getId())))
+                .thenReturn(Map.of(cached.getId(), cached));
+
+        List<User> users = userService.findByIds(List.of(cached.getId()));
+
+        Mockito.verifyNoInteractions(userRepository);
+        Assertions.assertEquals(1, users.size());
+    }
+
+    @Test
+    @DisplayName("Ban users with a single update, evicting caches and revoking tokens")
+    void banUsers_ok() {
+        UUID existing = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        BanUsers banUsers = BanUsers
+                .builder()
+                .ids(List.of(existing, unknown))
+                .ban(BanUser.builder().duration(5).unit(BanUser.Unit.M).build())
+                .build();
+
+        Mockito.when(userQueryRepository.banAll(Mockito.eq(List.of(existing, unknown)), Mockito.any(LocalDateTime.class)))
+                .thenReturn(List.of(existing));
+
+        List<Ban> bans = userService.banUsers(banUsers);
+
+        Mockito.verify(userBatchCache).evictUsers(List.of(existing));
+        Mockito.verify(revocationSet).revokeAll(List.of(existing), bans.get(0).getBanExpiration());
+        Assertions.assertEquals(1, bans.size());
+        Assertions.assertEquals(existing, bans.get(0).getId());
+        Assertions.assertEquals(LocalDateTime.now().plusMinutes(5).getMinute(), bans.get(0).getBanExpiration().getMinute());
+    }
+
+    @Test
+    @DisplayName("Unban users with a single update, evicting caches and lifting revocations")
+    void unbanUsers_ok() {
+        UUID id = UUID.randomUUID();
+
+        Mockito.when(userQueryRepository.unbanAll(List.of(id)))
+                .thenReturn(List.of(id));
+
+        userService.unbanUsers(UserIds.builder().ids(List.of(id)).build());
+
+        Mockito.verify(userBatchCache).evictUsers(List.of(id));
+        Mockito.verify(revocationSet).liftAll(List.of(id));
+    }
+
+    @Test
+    @DisplayName("Find active bans ordered by expiration")
+    void findActiveBans_ok() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        LocalDateTime now = LocalDateTime.now();
+        Mockito.when(revocationSet.activeBans())
+                .thenReturn(Map.of(second, now.plusHours(2), first, now.plusHours(1)));
+
+        List<Ban> bans = userService.findActiveBans();
+
+        Assertions.assertEquals(List.of(new Ban(first, now.plusHours(1)), new Ban(second, now.plusHours(2))), bans);
+    }
+
+    @Test
+    @DisplayName("Find users page with default size delegates to cached page of the current generation")
+    void findPage_defaultSize() {
+        UserPage userPage = UserPage.builder().users(List.of()).build();
+        Mockito.when(userPageGeneration.current())
+                .thenReturn(3L);
+        Mockito.when(self.findPageByCursor(null, 20, 3L))
+                .thenReturn(userPage);
+
+        UserPage page = userService.findPage(null, null);
+
+        Mockito.verify(self).findPageByCursor(null, 20, 3L);
+        Assertions.assertEquals(userPage, page);
+    }
+
+    @Test
+    @DisplayName("Find users page with size over the limit is capped")
+    void findPage_sizeCapped() {
+        UserPage userPage = UserPage.builder().users(List.of()).build();
+        Mockito.when(self.findPageByCursor("cursor", 100, 0L))
+                .thenReturn(userPage);
+
+        UserPage page = userService.findPage("cursor", 1000);
+
+        Mockito.verify(self).findPageByCursor("cursor", 100, 0L);
+        Assertions.assertEquals(userPage, page);
+    }
+
+    @Test
+    @DisplayName("Find first users page and continue with the returned cursor")
+    void findPageByCursor_ok() {
+        List<EUser> eUsers = new ArrayList<>();
+        for (String name : List.of("anna", "bruno", "carlo"))
+            eUsers.add(EUser.builder().id(UUID.randomUUID()).name(name).build());
+
+        Mockito.when(userQueryRepository.findPage(null, null, 3))
+                .thenReturn(eUsers);
+        Mockito.when(userQueryRepository.findPage("bruno", eUsers.get(1).getId(), 3))
+                .thenReturn(List.of(eUsers.get(2)));
+
+        UserPage first = userService.findPageByCursor(null, 2, 0);
+        UserPage second = userService.findPageByCursor(first.getNext(), 2, 0);
+
+        Mockito.verify(userQueryRepository).findPage(null, null, 3);
+        Mockito.verify(userQueryRepository).findPage("bruno", eUsers.get(1).getId(), 3);
+
+        Assertions.assertEquals(2, first.getUsers().size());
+        Assertions.assertEquals("anna", first.getUsers().get(0).getName());
+        Assertions.assertEquals("bruno", first.getUsers().get(1).getName());
+        Assertions.assertNotNull(first.getNext());
+        Assertions.assertEquals(1, second.getUsers().size());
+        Assertions.assertEquals("carlo", second.getUsers().get(0).getName());
+        Assertions.assertNull(second.getNext());
+    }
+
+    @Test
+    @DisplayName("Find users page with invalid cursor")
+    void findPageByCursor_invalidCursor() {
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> userService.findPageByCursor("not-a-cursor", 2, 0));
+
+        Mockito.verifyNoInteractions(userQueryRepository);
+        Assertions.assertEquals("invalid-cursor", exception.getError().getKey());
+    }
+
+    @Test
+    @DisplayName("Stream all users mapping every entity")
+    void streamAll_ok() {
+        EUser eUser = EUser.builder().id(UUID.randomUUID()).name("anna").build();
+        List<User> users = new ArrayList<>();
+
+        Mockito.when(userQueryRepository.streamAll())
+                .thenReturn(Stream.of(eUser));
+
+        userService.streamAll(users::add);
+
+        Mockito.verify(userQueryRepository).streamAll();
+        Assertions.assertEquals(1, users.size());
+        Assertions.assertEquals(eUser.getId(), users.get(0).getId());
+    }
 }
@@ -0,0 +1,68 @@
+package it.magiavventure.authorization.token;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@DisplayName("Instance pool tests")
+class InstancePoolTest {
+
+    @Test
+    @DisplayName("Reuse the released instances and drop the ones exceeding the size")
+    void borrow_ok() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        InstancePool<Object> pool = new InstancePool<>(1, () -> created.incrementAndGet());
+
+        Object first = pool.borrow();
+        Object second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+
+        Assertions.assertEquals(2, created.get());
+        Assertions.assertEquals(1, pool.idle());
+        Assertions.assertSame(first, pool.borrow());
+        Assertions.assertEquals(0, pool.idle());
+    }
+
+    @Test
+    @DisplayName("Share the instances between virtual threads")
+    void borrow_virtualThreads() throws Exception {
+        byte[] secret = "pool-secret".getBytes(StandardCharsets.UTF_8);
+        AtomicInteger created = new AtomicInteger();
+        InstancePool<Mac> pool = new InstancePool<>(4, () -> {
+            created.incrementAndGet();
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return mac;
+        });
+        Mac reference = Mac.getInstance("HmacSHA256");
+        reference.init(new SecretKeySpec(secret, "HmacSHA256"));
+        byte[] expected = reference.doFinal("input".getBytes(StandardCharsets.US_ASCII));
+
+        List<Future<byte[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 1_000; i++)
+                results.add(executor.submit(() -> {
+                    Mac mac = pool.borrow();
+                    byte[] result = mac.doFinal("input".getBytes(StandardCharsets.US_ASCII));
+                    pool.release(mac);
+                    return result;
+                }));
+        }
+
+        for (Future<byte[]> result : results)
+            Assertions.assertArrayEquals(expected, result.get());
+        Assertions.assertTrue(created.get() < 1_000);
+        Assertions.assertTrue(pool.idle() <= 4);
+    }
+}
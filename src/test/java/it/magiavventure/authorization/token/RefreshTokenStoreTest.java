@@ -0,0 +1,167 @@
+package it.magiavventure.authorization.token;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.common.error.MagiavventureException;
+import it.magiavventure.mongo.entity.EUser;
+import it.magiavventure.mongo.model.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@DisplayName("Refresh token store tests")
+class RefreshTokenStoreTest {
+    private static final String PREFIX = "magiavventure:authorization:refresh:";
+
+    private final StringRedisTemplate stringRedisTemplate = Mockito.mock(StringRedisTemplate.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RefreshTokenStore refreshTokenStore;
+
+    @BeforeEach
+    void setUp() {
+        AuthorizationProperties authorizationProperties = new AuthorizationProperties();
+        authorizationProperties.getRefresh().setEnabled(true);
+        refreshTokenStore = new RefreshTokenStore(stringRedisTemplate, objectMapper, meterRegistry,
+                authorizationProperties);
+    }
+
+    @Test
+    @DisplayName("Issue a refresh token of a new family")
+    void issue_ok() {
+        UUID id = UUID.randomUUID();
+        EUser eUser = EUser.builder().id(id).name("anna").authorities(List.of("user")).build();
+
+        String refreshToken = refreshTokenStore.issue(User.builder().id(id).name("anna").build(), eUser);
+
+        String[] parts = refreshToken.split("\\.");
+        Assertions.assertEquals(2, parts.length);
+        Assertions.assertDoesNotThrow(() -> UUID.fromString(parts[0]));
+        Assertions.assertEquals(32, Base64.getUrlDecoder().decode(parts[1]).length);
+        Mockito.verify(stringRedisTemplate).executePipelined(Mockito.any(SessionCallback.class));
+        Assertions.assertEquals(1, meterRegistry.counter("authorization.refresh", "result", "issued").count());
+    }
+
+    @Test
+    @DisplayName("Rotate the refresh token comparing the digest of the presented one")
+    @SuppressWarnings("unchecked")
+    void rotate_ok() throws Exception {
+        UUID family = UUID.randomUUID();
+        UUID id = UUID.randomUUID();
+        User user = User.builder().id(id).name("anna").build();
+        ArgumentCaptor<Object> argumentCaptor = ArgumentCaptor.forClass(Object.class);
+
+        Mockito.when(stringRedisTemplate.execute(Mockito.any(RedisScript.class),
+                        Mockito.eq(List.of(PREFIX + "family:" + family)), argumentCaptor.capture(),
+                        argumentCaptor.capture()))
+                .thenReturn(List.of("1", id.toString(), objectMapper.writeValueAsString(user), "user,admin"));
+
+        RefreshTokenStore.Session session = refreshTokenStore.rotate(family + ".secret");
+
+        Assertions.assertEquals(family, session.getFamily());
+        Assertions.assertEquals(id, session.getUserId());
+        Assertions.assertEquals(user, session.getUser());
+        Assertions.assertEquals(List.of("user", "admin"), session.getAuthorities());
+        Assertions.assertTrue(session.getRefreshToken().startsWith(family + "."));
+        Assertions.assertEquals(digest("secret"), argumentCaptor.getAllValues().get(0));
+        Assertions.assertEquals(digest(session.getRefreshToken().substring(family.toString().length() + 1)),
+                argumentCaptor.getAllValues().get(1));
+    }
+
+    @Test
+    @DisplayName("Reject a reused refresh token and its retries without reaching Redis")
+    @SuppressWarnings("unchecked")
+    void rotate_reused() {
+        UUID family = UUID.randomUUID();
+        UUID id = UUID.randomUUID();
+        ZSetOperations<String, String> zSetOperations = Mockito.mock(ZSetOperations.class);
+
+        Mockito.when(stringRedisTemplate.execute(Mockito.any(RedisScript.class), Mockito.anyList(),
+                        Mockito.any(), Mockito.any()))
+                .thenReturn(List.of("0", id.toString()));
+        Mockito.when(stringRedisTemplate.opsForZSet())
+                .thenReturn(zSetOperations);
+
+        MagiavventureException exception = Assertions.assertThrows(MagiavventureException.class,
+                () -> refreshTokenStore.rotate(family + ".secret"));
+        Assertions.assertThrows(MagiavventureException.class, () -> refreshTokenStore.rotate(family + ".other"));
+
+        Mockito.verify(stringRedisTemplate, Mockito.times(1)).execute(Mockito.any(RedisScript.class),
+                Mockito.anyList(), Mockito.any(), Mockito.any());
+        Mockito.verify(zSetOperations).remove(PREFIX + "user:" + id, family.toString());
+        Assertions.assertEquals("invalid-refresh-token", exception.getError().getKey());
+        Assertions.assertEquals(1, meterRegistry.counter("authorization.refresh", "result", "reused").count());
+        Assertions.assertEquals(1, meterRegistry.counter("authorization.refresh", "result", "rejected").count());
+    }
+
+    @Test
+    @DisplayName("Reject a malformed refresh token without reaching Redis")
+    void rotate_malformed() {
+        Assertions.assertThrows(MagiavventureException.class, () -> refreshTokenStore.rotate("malformed"));
+        Assertions.assertThrows(MagiavventureException.class, () -> refreshTokenStore.rotate("family.secret"));
+
+        Mockito.verifyNoInteractions(stringRedisTemplate);
+    }
+
+    @Test
+    @DisplayName("Revoke every family of a user")
+    @SuppressWarnings("unchecked")
+    void revokeAll_ok() {
+        UUID id = UUID.randomUUID();
+        UUID family = UUID.randomUUID();
+        ZSetOperations<String, String> zSetOperations = Mockito.mock(ZSetOperations.class);
+
+        Mockito.when(stringRedisTemplate.opsForZSet())
+                .thenReturn(zSetOperations);
+        Mockito.when(zSetOperations.range(PREFIX + "user:" + id, 0, -1))
+                .thenReturn(Set.of(family.toString()));
+
+        refreshTokenStore.revokeAll(id);
+
+        Mockito.verify(stringRedisTemplate).delete(List.of(PREFIX + "family:" + family));
+        Mockito.verify(stringRedisTemplate).delete(PREFIX + "user:" + id);
+        Assertions.assertThrows(MagiavventureException.class, () -> refreshTokenStore.rotate(family + ".secret"));
+        Mockito.verify(stringRedisTemplate, Mockito.never()).execute(Mockito.any(RedisScript.class),
+                Mockito.anyList(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Revoke a family removing it from the families of its user")
+    @SuppressWarnings("unchecked")
+    void revoke_ok() {
+        RefreshTokenStore.Session session = new RefreshTokenStore.Session(UUID.randomUUID(), UUID.randomUUID(),
+                null, List.of(), "refresh-token");
+        ZSetOperations<String, String> zSetOperations = Mockito.mock(ZSetOperations.class);
+
+        Mockito.when(stringRedisTemplate.opsForZSet())
+                .thenReturn(zSetOperations);
+
+        refreshTokenStore.revoke(session);
+
+        Mockito.verify(stringRedisTemplate).delete(PREFIX + "family:" + session.getFamily());
+        Mockito.verify(zSetOperations).remove(PREFIX + "user:" + session.getUserId(), session.getFamily().toString());
+        Assertions.assertThrows(MagiavventureException.class,
+                () -> refreshTokenStore.rotate(session.getFamily() + ".secret"));
+    }
+
+    private static String digest(String secret) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256")
+                .digest(secret.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,150 @@
+package it.magiavventure.authorization.token;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import it.magiavventure.mongo.entity.EUser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@DisplayName("Token signer tests")
+class TokenSignerTest {
+    private static final String SECRET = "verifier-secret-".repeat(8);
+
+    @TempDir
+    private Path keysDirectory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AuthorizationProperties authorizationProperties;
+
+    @BeforeEach
+    void setUp() {
+        authorizationProperties = new AuthorizationProperties();
+        authorizationProperties.getSigning().setEnabled(true);
+    }
+
+    @Test
+    @DisplayName("Sign token verifiable with the published key")
+    void sign_ok() throws Exception {
+        addKey("key-1", "secp256r1", true);
+        authorizationProperties.getSigning().setActiveKey("key-1");
+        TokenSigner tokenSigner = tokenSigner();
+        EUser eUser = EUser.builder().id(UUID.randomUUID()).name("anna").authorities(List.of("user")).build();
+
+        String token = tokenSigner.sign(eUser);
+
+        String[] parts = token.split("\\.");
+        Map<?, ?> header = objectMapper.readValue(Base64.getUrlDecoder().decode(parts[0]), Map.class);
+        Map<?, ?> claims = objectMapper.readValue(Base64.getUrlDecoder().decode(parts[1]), Map.class);
+        Assertions.assertEquals(Map.of("alg", "ES256", "typ", "JWT", "kid", "key-1"), header);
+        Assertions.assertEquals(eUser.getId().toString(), claims.get("id"));
+        Assertions.assertEquals(List.of("user"), claims.get("authorities"));
+        Assertions.assertEquals(64, Base64.getUrlDecoder().decode(parts[2]).length);
+        Assertions.assertEquals(eUser.getId(), verifier(tokenSigner).verifiedUserId(token));
+        Assertions.assertNull(verifier(tokenSigner).verifiedUserId(parts[0] + "." + parts[1] + "." + parts[2]
+                .replace(parts[2].charAt(0), parts[2].charAt(0) == 'A' ? 'B' : 'A')));
+    }
+
+    @Test
+    @DisplayName("Sign token with the authorities as a mask, keeping the names when they can't be encoded")
+    void sign_authorityMask() throws Exception {
+        addKey("key-1", "secp256r1", true);
+        authorizationProperties.getSigning().setActiveKey("key-1");
+        authorizationProperties.getSigning().setAuthorityMask(true);
+        TokenSigner tokenSigner = tokenSigner();
+        EUser admin = EUser.builder().id(UUID.randomUUID()).name("anna").authorities(List.of("user", "admin")).build();
+        EUser editor = EUser.builder().id(UUID.randomUUID()).name("bruna").authorities(List.of("editor")).build();
+
+        Map<?, ?> adminClaims = objectMapper.readValue(Base64.getUrlDecoder()
+                .decode(tokenSigner.sign(admin).split("\\.")[1]), Map.class);
+        Map<?, ?> editorClaims = objectMapper.readValue(Base64.getUrlDecoder()
+                .decode(tokenSigner.sign(editor).split("\\.")[1]), Map.class);
+
+        Assertions.assertEquals(3, adminClaims.get("auth"));
+        Assertions.assertFalse(adminClaims.containsKey("authorities"));
+        Assertions.assertEquals(List.of("editor"), editorClaims.get("authorities"));
+        Assertions.assertFalse(editorClaims.containsKey("auth"));
+    }
+
+    @Test
+    @DisplayName("Tokens of a retired key are still verified and its public key is still published")
+    void rotation_ok() throws Exception {
+        addKey("key-1", "secp256r1", true);
+        authorizationProperties.getSigning().setActiveKey("key-1");
+        EUser eUser = EUser.builder().id(UUID.randomUUID()).name("anna").build();
+        String oldToken = tokenSigner().sign(eUser);
+
+        authorizationProperties.getSigning().getKeys().get("key-1").setPrivateKey(null);
+        addKey("key-2", "secp384r1", true);
+        authorizationProperties.getSigning().setActiveKey("key-2");
+        TokenSigner tokenSigner = tokenSigner();
+        String newToken = tokenSigner.sign(eUser);
+
+        Assertions.assertEquals(eUser.getId(), verifier(tokenSigner).verifiedUserId(oldToken));
+        Assertions.assertEquals(eUser.getId(), verifier(tokenSigner).verifiedUserId(newToken));
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> keys = (List<Map<String, String>>) tokenSigner.jwks().get("keys");
+        Assertions.assertEquals(List.of("key-1", "key-2"), keys.stream().map(key -> key.get("kid")).toList());
+        Assertions.assertEquals(List.of("ES256", "ES384"), keys.stream().map(key -> key.get("alg")).toList());
+        Assertions.assertEquals(48, Base64.getUrlDecoder().decode(keys.get(1).get("x")).length);
+    }
+
+    @Test
+    @DisplayName("Fail on startup when the active key can't sign")
+    void activeKey_withoutPrivateKey() throws Exception {
+        addKey("key-1", "secp256r1", false);
+        authorizationProperties.getSigning().setActiveKey("key-1");
+
+        Assertions.assertThrows(IllegalStateException.class, this::tokenSigner);
+    }
+
+    @Test
+    @DisplayName("Disabled signer publishes no keys")
+    void disabled() {
+        authorizationProperties.getSigning().setEnabled(false);
+
+        TokenSigner tokenSigner = tokenSigner();
+
+        Assertions.assertFalse(tokenSigner.isEnabled());
+        Assertions.assertEquals(Map.of("keys", List.of()), tokenSigner.jwks());
+    }
+
+    private TokenSigner tokenSigner() {
+        return new TokenSigner(objectMapper, authorizationProperties, new DefaultResourceLoader());
+    }
+
+    private TokenVerifier verifier(TokenSigner tokenSigner) {
+        return new TokenVerifier(objectMapper, tokenSigner, authorizationProperties, SECRET);
+    }
+
+    private void addKey(String id, String curve, boolean withPrivateKey) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        KeyPair keyPair = generator.generateKeyPair();
+        AuthorizationProperties.SigningKey signingKey = new AuthorizationProperties.SigningKey();
+        signingKey.setPublicKey(pem(id + ".pub.pem", "PUBLIC KEY", keyPair.getPublic().getEncoded()));
+        if (withPrivateKey)
+            signingKey.setPrivateKey(pem(id + ".pem", "PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+        authorizationProperties.getSigning().getKeys().put(id, signingKey);
+    }
+
+    private String pem(String name, String type, byte[] encoded) throws Exception {
+        Path file = keysDirectory.resolve(name);
+        Files.writeString(file, "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder().encodeToString(encoded)
+                + "\n-----END " + type + "-----\n");
+        return file.toUri().toString();
+    }
+}
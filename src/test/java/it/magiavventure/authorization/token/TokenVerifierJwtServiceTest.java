@@ -0,0 +1,61 @@
+package it.magiavventure.authorization.token;
+
+import it.magiavventure.authorization.AuthorizationApplication;
+import it.magiavventure.jwt.service.JwtService;
+import it.magiavventure.mongo.model.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+
+/**
+ * Verifies the tokens built by the {@link JwtService} of the jwt library, so a change of its secret encoding,
+ * algorithm or user id claim breaks here instead of the introspection. The application starts without web
+ * server and doesn't need Mongo or Redis.
+ */
+@DisplayName("Token verifier with the jwt library tests")
+class TokenVerifierJwtServiceTest {
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void startContext() {
+        context = new SpringApplicationBuilder(AuthorizationApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "spring.data.mongodb.uri=mongodb://localhost:27017/test?serverSelectionTimeoutMS=100",
+                        "magiavventure.lib.jwt.secret=" + "verifier-secret-".repeat(8),
+                        "magiavventure.authorization.cache.local.enabled=false",
+                        "magiavventure.authorization.name-filter.enabled=false",
+                        "magiavventure.authorization.revocation.enabled=false",
+                        "logging.level.it.magiavventure=warn")
+                .run();
+    }
+
+    @AfterAll
+    static void stopContext() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Read the user id of a token built by the jwt library")
+    void verifiedUserId_jwtServiceToken() {
+        User user = User
+                .builder()
+                .id(UUID.randomUUID())
+                .name("anna")
+                .build();
+        String token = context.getBean(JwtService.class).buildJwt(user);
+        TokenVerifier tokenVerifier = context.getBean(TokenVerifier.class);
+
+        Assertions.assertEquals(user.getId(), tokenVerifier.verifiedUserId(token));
+        Assertions.assertEquals(user.getId(), tokenVerifier.verifiedUserId("Bearer " + token));
+        Assertions.assertNull(tokenVerifier.verifiedUserId(token.substring(0, token.length() - 2)));
+    }
+}
@@ -0,0 +1,63 @@
+package it.magiavventure.authorization.token;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.magiavventure.authorization.configuration.AuthorizationProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+@DisplayName("Token verifier tests")
+class TokenVerifierTest {
+    private static final String SECRET = "verifier-secret-".repeat(8);
+
+    private final TokenVerifier tokenVerifier = new TokenVerifier(new ObjectMapper(),
+            new TokenSigner(new ObjectMapper(), new AuthorizationProperties(), new DefaultResourceLoader()),
+            new AuthorizationProperties(), SECRET);
+
+    @Test
+    @DisplayName("Read the user id of a valid token")
+    void verifiedUserId_ok() throws Exception {
+        UUID id = UUID.randomUUID();
+
+        Assertions.assertEquals(id, tokenVerifier.verifiedUserId(token("HS512", id, futureExpiration(), SECRET)));
+        Assertions.assertEquals(id, tokenVerifier.verifiedUserId(
+                "Bearer " + token("HS256", id, futureExpiration(), SECRET)));
+    }
+
+    @Test
+    @DisplayName("Reject tokens signed with another secret, expired, unsigned or malformed")
+    void verifiedUserId_ko() throws Exception {
+        UUID id = UUID.randomUUID();
+        String token = token("HS512", id, futureExpiration(), SECRET);
+        String unsigned = token.substring(0, token.lastIndexOf('.') + 1);
+
+        Assertions.assertNull(tokenVerifier.verifiedUserId(token("HS512", id, futureExpiration(), "other-secret")));
+        Assertions.assertNull(tokenVerifier.verifiedUserId(token("HS512", id, 1L, SECRET)));
+        Assertions.assertNull(tokenVerifier.verifiedUserId(unsigned));
+        Assertions.assertNull(tokenVerifier.verifiedUserId(token.replace('.', '!')));
+        Assertions.assertNull(tokenVerifier.verifiedUserId(null));
+    }
+
+    private static long futureExpiration() {
+        return System.currentTimeMillis() / 1000 + 60;
+    }
+
+    private static String token(String algorithm, UUID id, long expiration, String secret) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString(("{\"alg\":\"" + algorithm + "\"}").getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(("{\"id\":\"" + id + "\",\"exp\":" + expiration + "}")
+                .getBytes(StandardCharsets.UTF_8));
+        String macAlgorithm = "HmacSHA" + algorithm.substring(2);
+        Mac mac = Mac.getInstance(macAlgorithm);
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), macAlgorithm));
+        byte[] signature = mac.doFinal((header + "." + payload).getBytes(StandardCharsets.US_ASCII));
+        return header + "." + payload + "." + encoder.encodeToString(signature);
+    }
+}